@@ -0,0 +1,248 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks of rendering, geometry and persistence hot paths measured on scenes from {@link SceneGenerator}.<br>
+ * Each benchmark runs a number of warmup iterations followed by measured ones, every iteration repeats single operation
+ * for fixed time. Reported are average throughput, allocation per operation and allocation rate of the benchmark thread
+ * and number of garbage collections during measurement.<br>
+ * Usage: {@code java -cp out -Djava.awt.headless=true com.geocreator.Benchmarks [options]}
+ * <br>--bench render,partial,hittest,reshape,saveload   benchmarks to run (partial repaints 64 x 64 pixel area)
+ * <br>--scene polygons,circles,mixed            scene kinds
+ * <br>--shapes 1000,10000,100000                scene sizes (up to 1000000, needs bigger heap)
+ * <br>--warmup 3 --iterations 5 --time 1000     iteration counts and length in milliseconds
+ * @see SceneGenerator
+ */
+public class Benchmarks {
+    private static final long SEED = 42;
+
+    /**
+     * Single benchmarked operation
+     */
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    private static ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Returns number of bytes allocated so far by current thread or -1 if JVM does not support it
+     * @return allocated bytes
+     */
+    private static long allocatedBytes() {
+        if(threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Returns number of garbage collections so far
+     * @return collection count of all collectors
+     */
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Runs operation for given time
+     * @param op operation
+     * @param millis iteration length
+     * @return number of operations done
+     * @throws Exception
+     */
+    private static long iterate(Operation op, long millis) throws Exception {
+        long ops = 0;
+        long end = System.nanoTime() + millis * 1000000L;
+        do {
+            op.run();
+            ops++;
+        } while(System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Warms up and measures operation, then prints one result line
+     * @param name benchmark name
+     * @param kind scene kind
+     * @param shapes scene size
+     * @param op operation
+     * @param warmup number of warmup iterations
+     * @param iterations number of measured iterations
+     * @param millis iteration length
+     * @throws Exception
+     */
+    private static void measure(String name, SceneGenerator.SceneKind kind, int shapes, Operation op,
+                                int warmup, int iterations, long millis) throws Exception {
+        for(int i = 0; i < warmup; i++) {
+            iterate(op, millis);
+        }
+
+        long gcBefore = gcCount();
+        long allocBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long ops = 0;
+        for(int i = 0; i < iterations; i++) {
+            ops += iterate(op, millis);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = allocatedBytes() - allocBefore;
+        long gcs = gcCount() - gcBefore;
+
+        System.out.printf("%-10s %-9s %9d %14.3f ops/s %14.1f B/op %10.1f MB/s %6d gc%n",
+                name, kind.name().toLowerCase(), shapes, ops / seconds,
+                allocBefore < 0 ? Double.NaN : (double)allocated / ops,
+                allocBefore < 0 ? Double.NaN : allocated / seconds / (1024 * 1024),
+                gcs);
+    }
+
+    /**
+     * Generates scene with all shapes indexed and their geometry already built
+     * @param kind scene kind
+     * @param shapes scene size
+     * @param index index to fill
+     * @return generated scene
+     */
+    private static GeometricCanvasSavedState prepareScene(SceneGenerator.SceneKind kind, int shapes, ShapeIndex index) {
+        GeometricCanvasSavedState scene = SceneGenerator.generate(kind, shapes, SEED);
+        long zOrder = 0;
+        for(PolyShape pls : scene.polyShapes) {
+            pls.setZOrder(zOrder++);
+            pls.getShape();
+            index.update(pls);
+        }
+        return scene;
+    }
+
+    /**
+     * Parses comma separated list
+     * @param value list
+     * @return list items
+     */
+    private static String[] list(String value) {
+        return value.split(",");
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] benches = list("render,partial,hittest,reshape,saveload");
+        String[] scenes = list("polygons,circles,mixed");
+        String[] sizes = list("1000,10000,100000");
+        int warmup = 3;
+        int iterations = 5;
+        long millis = 1000;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "--bench": benches = list(args[i+1]); break;
+                case "--scene": scenes = list(args[i+1]); break;
+                case "--shapes": sizes = list(args[i+1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i+1]); break;
+                case "--iterations": iterations = Integer.parseInt(args[i+1]); break;
+                case "--time": millis = Long.parseLong(args[i+1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf("%-10s %-9s %9s %20s %19s %16s %9s%n", "Benchmark", "Scene", "Shapes", "Throughput", "Alloc/op", "Alloc rate", "GCs");
+        for(String sceneName : scenes) {
+            SceneGenerator.SceneKind kind = SceneGenerator.SceneKind.valueOf(sceneName.toUpperCase());
+            for(String size : sizes) {
+                int shapes = Integer.parseInt(size);
+                ShapeIndex index = new ShapeIndex();
+                GeometricCanvasSavedState scene = prepareScene(kind, shapes, index);
+                ArrayList<PolyShape> shapeList = new ArrayList<>(scene.polyShapes);
+
+                for(String bench : benches) {
+                    switch(bench) {
+                        case "render": {
+                            BufferedImage image = new BufferedImage(SceneGenerator.SCENE_WIDTH, SceneGenerator.SCENE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+                            measure(bench, kind, shapes, () -> {
+                                Graphics2D g2d = image.createGraphics();
+                                g2d.setColor(Color.WHITE);
+                                g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+                                for(PolyShape pls : scene.polyShapes) {
+                                    ShapeRenderer.paintShape(g2d, pls, false);
+                                }
+                                g2d.dispose();
+                            }, warmup, iterations, millis);
+                            break;
+                        }
+                        case "partial": {
+                            BufferedImage image = new BufferedImage(SceneGenerator.SCENE_WIDTH, SceneGenerator.SCENE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+                            Random random = new Random(SEED);
+                            int[] skipped = {0};
+                            measure(bench, kind, shapes, () -> {
+                                Graphics2D g2d = image.createGraphics();
+                                g2d.clipRect(random.nextInt(image.getWidth() - 64), random.nextInt(image.getHeight() - 64), 64, 64);
+                                Rectangle clip = g2d.getClipBounds();
+                                g2d.setColor(Color.WHITE);
+                                g2d.fill(clip);
+                                skipped[0] = 0;
+                                for(PolyShape pls : scene.polyShapes) {
+                                    if(!ShapeRenderer.paintShape(g2d, pls, false, clip)) {
+                                        skipped[0]++;
+                                    }
+                                }
+                                g2d.dispose();
+                            }, warmup, iterations, millis);
+                            System.out.printf("%-10s %-9s %9d %14d shapes%n", "skipped", kind.name().toLowerCase(), shapes, skipped[0]);
+                            break;
+                        }
+                        case "hittest": {
+                            Random random = new Random(SEED);
+                            Point2D[] points = new Point2D[4096];
+                            for(int i = 0; i < points.length; i++) {
+                                points[i] = new Point2D.Double(random.nextDouble() * SceneGenerator.SCENE_WIDTH, random.nextDouble() * SceneGenerator.SCENE_HEIGHT);
+                            }
+                            int[] next = {0};
+                            measure(bench, kind, shapes, () -> {
+                                index.topmostAt(points[next[0]++ & (points.length - 1)]);
+                            }, warmup, iterations, millis);
+                            break;
+                        }
+                        case "reshape": {
+                            int[] next = {0};
+                            measure(bench, kind, shapes, () -> {
+                                int n = next[0]++;
+                                PolyShape pls = shapeList.get(n % shapeList.size());
+                                switch(n % 3) {
+                                    case 0: pls.move((n & 4) == 0 ? 1 : -1, 0); break;
+                                    case 1: pls.modifyScaleTransformFactor((n & 4) == 0 ? 0.025 : -0.025); break;
+                                    default: pls.modifyRotateTransformIndex((n & 4) == 0 ? 1 : -1); break;
+                                }
+                                pls.getShape();
+                                index.update(pls);
+                            }, warmup, iterations, millis);
+                            break;
+                        }
+                        case "saveload": {
+                            File file = File.createTempFile("geocreator-bench", ".geo");
+                            file.deleteOnExit();
+                            measure(bench, kind, shapes, () -> {
+                                DocumentFormat.save(scene, file.getPath());
+                                DocumentFormat.load(file.getPath());
+                            }, warmup, iterations, millis);
+                            System.out.printf("%-10s %-9s %9d %14d bytes%n", "filesize", kind.name().toLowerCase(), shapes, file.length());
+                            break;
+                        }
+                        default:
+                            throw new IllegalArgumentException("Unknown benchmark " + bench);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic scenes for {@link Benchmarks}.
+ * Shapes are spread uniformly over fixed area and get smaller as their number grows,
+ * so that density of the scene stays similar for any size. Same seed always gives the same scene.
+ * @see Benchmarks
+ */
+public class SceneGenerator {
+    public static final int SCENE_WIDTH = 1920;
+    public static final int SCENE_HEIGHT = 1080;
+
+    /**
+     * Kinds of generated scenes
+     */
+    public enum SceneKind {
+        POLYGONS,   // polygons with 3 to 24 vertices
+        CIRCLES,    // circles only
+        MIXED       // polygons, rectangles and circles in equal parts
+    }
+
+    /**
+     * Generates scene
+     * @param kind kind of shapes in scene
+     * @param count number of shapes
+     * @param seed random seed
+     * @return shapes in painting order and next free ID
+     */
+    public static GeometricCanvasSavedState generate(SceneKind kind, int count, long seed) {
+        Random random = new Random(seed);
+        double size = Math.max(4, 2 * Math.sqrt((double)SCENE_WIDTH * SCENE_HEIGHT / count));
+        LinkedList<PolyShape> polyShapes = new LinkedList<>();
+
+        for(int id = 0; id < count; id++) {
+            MainWindow.Mode mode;
+            switch(kind) {
+                case POLYGONS:
+                    mode = MainWindow.Mode.CREATING_POLYGONS;
+                    break;
+                case CIRCLES:
+                    mode = MainWindow.Mode.CREATING_CIRCLES;
+                    break;
+                default:
+                    mode = MainWindow.Mode.values()[id % 3];
+                    break;
+            }
+
+            double cx = random.nextDouble() * SCENE_WIDTH;
+            double cy = random.nextDouble() * SCENE_HEIGHT;
+            double[] coords;
+            if(mode == MainWindow.Mode.CREATING_POLYGONS) {
+                int vertices = 3 + random.nextInt(22);
+                coords = new double[2 * vertices];
+                for(int i = 0; i < vertices; i++) {
+                    double angle = 2 * Math.PI * i / vertices;
+                    double radius = size * (0.25 + 0.25 * random.nextDouble());
+                    coords[2*i] = Math.rint(cx + radius * Math.cos(angle));
+                    coords[2*i+1] = Math.rint(cy + radius * Math.sin(angle));
+                }
+            } else {
+                coords = new double[] {
+                        Math.rint(cx), Math.rint(cy),
+                        Math.rint(cx + size * (random.nextDouble() - 0.5)), Math.rint(cy + size * (random.nextDouble() - 0.5))
+                };
+            }
+
+            double scale = 1.0 + 0.025 * (random.nextInt(9) - 4);
+            int rotate = random.nextInt(5) == 0 ? random.nextInt(256) : 0;
+            polyShapes.add(new PolyShape(id, mode, new Color(random.nextInt()), scale, rotate, coords));
+        }
+        return new GeometricCanvasSavedState(polyShapes, count);
+    }
+}
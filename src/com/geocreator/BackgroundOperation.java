@@ -0,0 +1,141 @@
+package com.geocreator;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs file operation (saving, exporting) on a background I/O thread while user keeps working with the window.<br>
+ * Operations are run one at a time in order they were started. Their progress is shown in a {@link ProgressMonitor}
+ * that also lets user cancel them; when an operation ends, message dialog tells whether it succeeded.<br>
+ * Operation must only work on data nobody else changes, eg. snapshot of canvas (see {@link GeometricCanvas#snapshot()}).
+ * @see ProgressListener
+ */
+public class BackgroundOperation extends SwingWorker<Void, Void> {
+    /**
+     * Work done in background
+     */
+    public interface Work {
+        /**
+         * Does the work, reporting its progress
+         * @param progress listener to report progress to, throws when operation is cancelled
+         * @throws IOException
+         */
+        void run(ProgressListener progress) throws IOException;
+    }
+
+    private static final int CANCEL_POLL_MILLIS = 100;
+
+    // single thread, so operations on the same file can't overtake each other
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GeoCreator I/O");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Component parent;
+    private String description;
+    private String successMessage;
+    private String failureMessage;
+    private Work work;
+    private Runnable onSuccess;
+    private ProgressMonitor monitor;
+    private Timer cancelPoll;
+
+    /**
+     * Creates operation, it is not started until {@link #start()}
+     * @param parent component dialogs are shown over
+     * @param description what is being done, shown in progress dialog
+     * @param successMessage message shown when operation succeeds
+     * @param failureMessage message shown when operation fails
+     * @param work work to be done in background
+     * @param onSuccess run on Event Dispatch Thread after operation succeeded, might be null
+     */
+    public BackgroundOperation(Component parent, String description, String successMessage, String failureMessage,
+                               Work work, Runnable onSuccess) {
+        this.parent = parent;
+        this.description = description;
+        this.successMessage = successMessage;
+        this.failureMessage = failureMessage;
+        this.work = work;
+        this.onSuccess = onSuccess;
+    }
+
+    /**
+     * Shows progress monitor and queues operation on I/O thread. Has to be called on Event Dispatch Thread.
+     */
+    public void start() {
+        monitor = new ProgressMonitor(parent, description, null, 0, 100);
+        addPropertyChangeListener(event -> {
+            if("progress".equals(event.getPropertyName())) {
+                monitor.setProgress((Integer)event.getNewValue());
+            }
+        });
+        cancelPoll = new Timer(CANCEL_POLL_MILLIS, event -> {
+            if(monitor.isCanceled()) {
+                cancel(false);
+            }
+        });
+        cancelPoll.start();
+        IO_EXECUTOR.execute(this);
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        long start = System.nanoTime();
+        work.run((done, total) -> {
+            if(isCancelled()) {
+                throw new InterruptedIOException(description + " cancelled");
+            }
+            setProgress(total > 0 ? (int)Math.min(100, 100 * done / total) : 0);
+        });
+        System.out.printf("[BackgroundOperation] %s done in %.1f ms%n", description, (System.nanoTime() - start) / 1e6);
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        cancelPoll.stop();
+        monitor.close();
+        if(isCancelled()) {
+            System.out.println("[BackgroundOperation] " + description + " cancelled");
+            return;
+        }
+        try {
+            get();
+            if(onSuccess != null) {
+                onSuccess.run();
+            }
+            JOptionPane.showMessageDialog(parent, successMessage, "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (ExecutionException | InterruptedException e) {
+            System.out.println("[BackgroundOperation] " + description + " failed: " + e.getCause());
+            JOptionPane.showMessageDialog(parent, failureMessage, "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Queues task on I/O thread, behind operations started before
+     * @param task task to run
+     */
+    static void execute(Runnable task) {
+        IO_EXECUTOR.execute(task);
+    }
+
+    /**
+     * Waits until all started operations finish, eg. before application exits
+     * @param timeoutMillis maximal time to wait
+     */
+    public static void awaitPending(long timeoutMillis) {
+        IO_EXECUTOR.shutdown();
+        try {
+            IO_EXECUTOR.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
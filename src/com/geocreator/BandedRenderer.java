@@ -0,0 +1,156 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Rasterizes many {@link PolyShape} objects into an image on all cores of {@link ForkJoinPool#commonPool()}.<br>
+ * Image is split into horizontal bands and every band is painted into its own region of the image by one task,
+ * with only the shapes that overlap it, in painting order. Bands don't share any pixels, so there is nothing to merge
+ * once all of them are done. Geometry of all shapes is built before bands are painted, so tasks only read shapes.
+ * Shapes lying outside of the image are skipped.<br>
+ * Scenes with fewer than {@code geocreator.parallelMinShapes} (2000 by default) shapes and machines with a single core
+ * are painted on the calling thread. Parallel painting can be turned off with {@code -Dgeocreator.parallelRender=false}.
+ * @see SceneRenderer
+ * @see LayerCache
+ * @see GeometryBuilder
+ */
+public class BandedRenderer extends RecursiveAction {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("geocreator.parallelRender", "true"));
+    public static final int MIN_SHAPES = Integer.getInteger("geocreator.parallelMinShapes", 2000);
+
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_BAND_HEIGHT = 32;  // bands are not made thinner than this many pixels
+    private static final int BANDS_PER_THREAD = 4;  // more bands than threads even out bands of different cost
+
+    private BufferedImage image;
+    private PolyShape[] shapes;
+    private int[][] bandShapes;     // positions of shapes overlapping each band, in painting order
+    private int[] bandSizes;        // number of positions used in bandShapes
+    private int bandHeight;
+    private AffineTransform transform;
+    private PolyShape highlighted;
+    private int from;               // first band painted by this task
+    private int to;                 // band following the last one painted by this task
+
+    private BandedRenderer(BufferedImage image, PolyShape[] shapes, int[][] bandShapes, int[] bandSizes, int bandHeight,
+                           AffineTransform transform, PolyShape highlighted, int from, int to) {
+        this.image = image;
+        this.shapes = shapes;
+        this.bandShapes = bandShapes;
+        this.bandSizes = bandSizes;
+        this.bandHeight = bandHeight;
+        this.transform = transform;
+        this.highlighted = highlighted;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if(to - from == 1) {
+            paintBand(from);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new BandedRenderer(image, shapes, bandShapes, bandSizes, bandHeight, transform, highlighted, from, mid),
+                new BandedRenderer(image, shapes, bandShapes, bandSizes, bandHeight, transform, highlighted, mid, to));
+    }
+
+    /**
+     * Paints shapes overlapping band into its region of image
+     * @param band band number
+     */
+    private void paintBand(int band) {
+        int top = band * bandHeight;
+        int height = Math.min(bandHeight, image.getHeight() - top);
+        Graphics2D g2d = image.getSubimage(0, top, image.getWidth(), height).createGraphics();
+        g2d.translate(0, -top);
+        g2d.transform(transform);
+        int[] positions = bandShapes[band];
+        for(int i = 0; i < bandSizes[band]; i++) {
+            PolyShape pls = shapes[positions[i]];
+            ShapeRenderer.paintShape(g2d, pls, pls == highlighted);
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Paints shapes over image, see {@link #paint(BufferedImage, PolyShape[], AffineTransform, PolyShape)}
+     * @param image image to paint on, its background is already painted
+     * @param polyShapes shapes in painting order
+     * @param transform transform from canvas to image pixels
+     * @param highlighted shape with highlighted border or null
+     * @return number of shapes skipped because they lie outside of image
+     */
+    public static int paint(BufferedImage image, List<PolyShape> polyShapes, AffineTransform transform, PolyShape highlighted) {
+        return paint(image, polyShapes.toArray(new PolyShape[0]), transform, highlighted);
+    }
+
+    /**
+     * Paints shapes over image, in bands on all cores or on calling thread if the scene is small.
+     * Shapes lying outside of image are skipped. Shapes must not be changed until painting finishes.
+     * @param image image to paint on, its background is already painted
+     * @param shapes shapes in painting order
+     * @param transform transform from canvas to image pixels
+     * @param highlighted shape with highlighted border or null
+     * @return number of shapes skipped because they lie outside of image
+     */
+    public static int paint(BufferedImage image, PolyShape[] shapes, AffineTransform transform, PolyShape highlighted) {
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        int bands = Math.min(image.getHeight() / MIN_BAND_HEIGHT, threads * BANDS_PER_THREAD);
+        if(!ENABLED || shapes.length < MIN_SHAPES || threads < 2 || bands < 2) {
+            Graphics2D g2d = image.createGraphics();
+            g2d.clipRect(0, 0, image.getWidth(), image.getHeight());
+            g2d.transform(transform);
+            Rectangle clip = g2d.getClipBounds();
+            int skipped = 0;
+            for(PolyShape pls : shapes) {
+                if(!ShapeRenderer.paintShape(g2d, pls, pls == highlighted, clip)) {
+                    skipped++;
+                }
+            }
+            g2d.dispose();
+            return skipped;
+        }
+
+        GeometryBuilder.build(shapes);
+        int bandHeight = (image.getHeight() + bands - 1) / bands;
+        bands = (image.getHeight() + bandHeight - 1) / bandHeight;
+        int[][] bandShapes = new int[bands][];
+        int[] bandSizes = new int[bands];
+        for(int band = 0; band < bands; band++) {
+            bandShapes[band] = new int[Math.max(16, shapes.length / bands)];
+        }
+        // border may be widened and drawn half outside of bounds
+        double margin = ShapeRenderer.ACTIVE_BORDER_WIDTH * Math.max(Math.abs(transform.getScaleX()) + Math.abs(transform.getShearX()),
+                Math.abs(transform.getScaleY()) + Math.abs(transform.getShearY())) + 2;
+        int skipped = 0;
+        for(int i = 0; i < shapes.length; i++) {
+            if(!shapes[i].isDrawable()) {
+                continue;
+            }
+            Rectangle2D bounds = transform.createTransformedShape(shapes[i].getBounds2D()).getBounds2D();
+            int first = Math.max(0, (int)Math.floor((bounds.getMinY() - margin) / bandHeight));
+            int last = Math.min(bands - 1, (int)Math.floor((bounds.getMaxY() + margin) / bandHeight));
+            if(first > last || bounds.getMaxX() + margin < 0 || bounds.getMinX() - margin > image.getWidth()) {
+                skipped++;
+                continue;
+            }
+            for(int band = first; band <= last; band++) {
+                if(bandSizes[band] == bandShapes[band].length) {
+                    bandShapes[band] = Arrays.copyOf(bandShapes[band], bandSizes[band] * 2);
+                }
+                bandShapes[band][bandSizes[band]++] = i;
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new BandedRenderer(image, shapes, bandShapes, bandSizes, bandHeight, transform, highlighted, 0, bands));
+        return skipped;
+    }
+}
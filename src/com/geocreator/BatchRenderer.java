@@ -0,0 +1,314 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless entry point converting saved documents to PNG images without creating any Swing components.<br>
+ * Drawing of each document is scaled to fit the chosen image size. Documents are rendered in parallel
+ * on a fixed pool of worker threads, by default one per processor core. Images are named after documents,
+ * documents with the same name get a number appended.<br>
+ * Usage: {@code java -cp GeoCreator com.geocreator.BatchRenderer [--size 256x256] [--out directory] [--threads n]
+ * [--compression fast|balanced|smallest] files or directories...}
+ * @see DocumentFormat
+ * @see LegacyDocumentImporter
+ * @see ShapeRenderer
+ */
+public class BatchRenderer {
+    private static final int MARGIN = 2;     // pixels left around the drawing, so borders are not cut
+
+    private int width = 256;
+    private int height = 256;
+    private File outputDirectory = new File(".");
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PngStreamWriter.Compression compression = PngStreamWriter.Compression.getDefault();
+
+    private AtomicLong renderedShapes = new AtomicLong();
+    private AtomicLong encodeNanos = new AtomicLong();
+    private AtomicLong outputBytes = new AtomicLong();
+
+    /**
+     * Loads document from file in any supported format
+     * @param file document file
+     * @return shapes and next free ID
+     * @throws Exception
+     */
+    static GeometricCanvasSavedState loadDocument(File file) throws Exception {
+        if(DocumentFormat.isDocument(file.getPath())) {
+            return DocumentFormat.load(file.getPath());
+        }
+        return LegacyDocumentImporter.importFile(file.getPath());
+    }
+
+    /**
+     * Renders shapes to image of specified size, scaled to fit and centered
+     * @param polyShapes shapes to be rendered
+     * @param width image width
+     * @param height image height
+     * @return rendered image
+     */
+    static BufferedImage renderToImage(Iterable<PolyShape> polyShapes, int width, int height) {
+        Rectangle2D bounds = null;
+        for(PolyShape pls : polyShapes) {
+            if(pls.isDrawable()) {
+                if(bounds == null) {
+                    bounds = (Rectangle2D)pls.getBounds2D().clone();
+                } else {
+                    bounds.add(pls.getBounds2D());
+                }
+            }
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        if(bounds != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            double scale = Math.min((width - 2 * MARGIN) / Math.max(1, bounds.getWidth()),
+                    (height - 2 * MARGIN) / Math.max(1, bounds.getHeight()));
+            g2d.translate(width / 2.0, height / 2.0);
+            g2d.scale(scale, scale);
+            g2d.translate(-bounds.getCenterX(), -bounds.getCenterY());
+            ShapeRenderer.paintShapes(g2d, polyShapes);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Names output image of every document after the document, documents with the same name from different
+     * directories get a number appended (eg. drawing.png, drawing-2.png), so they don't overwrite each other
+     * @param files documents to be converted
+     * @return output image of each document
+     */
+    private List<File> outputFiles(List<File> files) {
+        List<File> outputs = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        for(File file : files) {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            String base = dot > 0 ? name.substring(0, dot) : name;
+            String outputName = base + ".png";
+            // file systems might not tell names differing only in case apart
+            for(int n = 2; !used.add(outputName.toLowerCase()); n++) {
+                outputName = base + "-" + n + ".png";
+            }
+            outputs.add(new File(outputDirectory, outputName));
+        }
+        return outputs;
+    }
+
+    /**
+     * Converts single document, logs time spent on each step
+     * @param file document file
+     * @param output image file to write
+     * @throws Exception
+     */
+    private void convert(File file, File output) throws Exception {
+        long start = System.nanoTime();
+        GeometricCanvasSavedState state = loadDocument(file);
+        long loaded = System.nanoTime();
+        BufferedImage image = renderToImage(state.polyShapes, width, height);
+        long rendered = System.nanoTime();
+
+        PngStreamWriter png;
+        try(FileOutputStream out = new FileOutputStream(output)) {
+            png = PngStreamWriter.write(image, out, compression);
+        }
+        long written = System.nanoTime();
+
+        renderedShapes.addAndGet(state.polyShapes.size());
+        encodeNanos.addAndGet(png.getEncodeNanos());
+        outputBytes.addAndGet(png.getOutputSize());
+        System.out.printf("[BatchRenderer] %s -> %s (%d shapes, load %.1f ms, render %.1f ms, write %.1f ms)%n",
+                file.getPath(), output.getPath(), state.polyShapes.size(),
+                (loaded - start) / 1e6, (rendered - loaded) / 1e6, (written - rendered) / 1e6);
+    }
+
+    /**
+     * Converts all documents on worker pool and prints summary
+     * @param files documents to be converted
+     * @return number of documents that failed
+     * @throws InterruptedException
+     */
+    public int run(List<File> files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+
+        List<File> outputs = outputFiles(files);
+        List<Future<?>> results = new ArrayList<>();
+        for(int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            File output = outputs.get(i);
+            results.add(pool.submit(() -> {
+                convert(file, output);
+                return null;
+            }));
+        }
+
+        int failed = 0;
+        for(int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (Exception e) {
+                failed++;
+                System.err.println("[BatchRenderer] Failed to convert " + files.get(i).getPath() + ": " + e.getCause());
+            }
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[BatchRenderer] Converted %d of %d documents in %.2f s on %d threads (%.1f documents/s, %.0f shapes/s)%n",
+                files.size() - failed, files.size(), seconds, threads,
+                (files.size() - failed) / seconds, renderedShapes.get() / seconds);
+        System.out.printf("[BatchRenderer] PNG encoding (%s): %.1f ms total, %d KiB written%n",
+                compression.name().toLowerCase(), encodeNanos.get() / 1e6, outputBytes.get() / 1024);
+        return failed;
+    }
+
+    /**
+     * Checks whether file is a document in any supported format, journals and temporary files are not
+     * @param file file to check
+     * @return true if file starts with magic bytes of a supported format, false otherwise or if it can't be read
+     */
+    static boolean isDocument(File file) {
+        String name = file.getName();
+        // document left half written has the same magic bytes
+        if(name.endsWith(DocumentFormat.TEMPORARY_SUFFIX) || name.endsWith(EditJournal.SUFFIX)) {
+            return false;
+        }
+        try {
+            return DocumentFormat.isDocument(file.getPath()) || LegacyDocumentImporter.isLegacyDocument(file.getPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects documents from arguments, directories are expanded to documents they contain.
+     * Other files in directories (eg. journals and temporary files written next to documents) are skipped.
+     * @param paths files or directories
+     * @return documents to be converted
+     * @see EditJournal
+     */
+    private static List<File> collectFiles(List<String> paths) {
+        List<File> files = new ArrayList<>();
+        int skipped = 0;
+        for(String path : paths) {
+            File file = new File(path);
+            File[] children = file.listFiles();
+            if(children != null) {
+                for(File child : children) {
+                    if(!child.isFile()) {
+                        continue;
+                    }
+                    if(isDocument(child)) {
+                        files.add(child);
+                    } else {
+                        skipped++;
+                    }
+                }
+            } else {
+                files.add(file);
+            }
+        }
+        if(skipped > 0) {
+            System.out.println("[BatchRenderer] Skipped " + skipped + " files that are not documents");
+        }
+        return files;
+    }
+
+    /**
+     * Parses positive number given as option value
+     * @param value option value
+     * @return parsed number
+     * @throws NumberFormatException if value is not a number
+     * @throws IllegalArgumentException if number is not positive
+     */
+    private static int parsePositive(String value) {
+        int number = Integer.parseInt(value);
+        if(number <= 0) {
+            throw new IllegalArgumentException("Expected positive number: " + value);
+        }
+        return number;
+    }
+
+    /**
+     * Prints usage line and exits
+     */
+    private static void usage() {
+        System.err.println("Usage: BatchRenderer [--size 256x256] [--out directory] [--threads n] [--compression fast|balanced|smallest] files or directories...");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        BatchRenderer renderer = new BatchRenderer();
+        List<String> paths = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if(!option.startsWith("--")) {
+                paths.add(option);
+                continue;
+            }
+            if(i + 1 >= args.length) {
+                // every option takes a value
+                usage();
+            }
+            String value = args[++i];
+            try {
+                switch(option) {
+                    case "--size":
+                        String[] size = value.split("x");
+                        if(size.length != 2) {
+                            throw new IllegalArgumentException("Expected width x height");
+                        }
+                        renderer.width = parsePositive(size[0]);
+                        renderer.height = parsePositive(size[1]);
+                        break;
+                    case "--out":
+                        renderer.outputDirectory = new File(value);
+                        break;
+                    case "--threads":
+                        renderer.threads = parsePositive(value);
+                        break;
+                    case "--compression":
+                        renderer.compression = PngStreamWriter.Compression.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    default:
+                        System.err.println("Unknown option: " + option);
+                        usage();
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is one too
+                System.err.println("Invalid value of " + option + ": " + value);
+                usage();
+            }
+        }
+
+        if(paths.isEmpty()) {
+            usage();
+        }
+        if(!renderer.outputDirectory.isDirectory() && !renderer.outputDirectory.mkdirs()) {
+            System.err.println("Couldn't create output directory: " + renderer.outputDirectory);
+            System.exit(2);
+        }
+
+        System.exit(renderer.run(collectFiles(paths)) == 0 ? 0 : 1);
+    }
+}
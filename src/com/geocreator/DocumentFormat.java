@@ -0,0 +1,215 @@
+package com.geocreator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Binary file format of GeoCreator documents.<br>
+ * File starts with a header:
+ * <br>- magic bytes "GEOC"
+ * <br>- format version (2 bytes) and flags (2 bytes, unused)
+ * <br>- next free {@link PolyShape} ID (8 bytes)
+ * <br>- number of shape records (4 bytes)
+ * <br>- generation (8 bytes, since version 2) - random token changed on every full save, {@link EditJournal} written
+ * against this file carries the same one
+ * <br>
+ * followed by one record per {@link PolyShape} in painting order (bottom first):
+ * <br>- shape kind (1 byte) and coordinates encoding (1 byte)
+ * <br>- ID (8 bytes), background color as ARGB (4 bytes)
+ * <br>- scale transform factor (8 bytes) and rotate transform index (4 bytes)
+ * <br>- number of vertices (4 bytes) and packed vertices
+ * <br>
+ * Vertices with whole coordinates are stored as zig-zag variable length deltas from the previous vertex,
+ * others as pairs of doubles. All numbers are big endian.<br>
+ * Files written by the first release with Java serialization are recognized and imported by {@link LegacyDocumentImporter}.
+ * Edits saved after the document was written are kept in its journal and applied when document is loaded.
+ * @see DocumentWriter
+ * @see DocumentReader
+ * @see GeometricCanvasSavedState
+ * @see EditJournal
+ */
+public class DocumentFormat {
+    public static final int MAGIC = 0x47454F43;     // "GEOC"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE_V1 = 20;
+    public static final int HEADER_SIZE = 28;
+    public static final String TEMPORARY_SUFFIX = ".tmp";     // document is written next to itself and renamed
+
+    // number of shapes between progress reports
+    static final int PROGRESS_STEP = 4096;
+
+    // shape kinds
+    static final int KIND_POLYGON = 0;
+    static final int KIND_RECTANGLE = 1;
+    static final int KIND_CIRCLE = 2;
+
+    // coordinates encodings
+    static final int COORDS_DELTA_VARINT = 0;
+    static final int COORDS_FLOAT64 = 1;
+
+    /**
+     * Maps mode shape was created with to kind stored in file
+     * @param mode shape's mode
+     * @return shape kind
+     */
+    static int kindOf(MainWindow.Mode mode) {
+        switch(mode) {
+            case CREATING_RECTANGLES:
+                return KIND_RECTANGLE;
+            case CREATING_CIRCLES:
+                return KIND_CIRCLE;
+            default:
+                return KIND_POLYGON;
+        }
+    }
+
+    /**
+     * Maps kind stored in file to mode shape was created with
+     * @param kind shape kind
+     * @return shape's mode or null if kind is unknown
+     */
+    static MainWindow.Mode modeOf(int kind) {
+        switch(kind) {
+            case KIND_POLYGON:
+                return MainWindow.Mode.CREATING_POLYGONS;
+            case KIND_RECTANGLE:
+                return MainWindow.Mode.CREATING_RECTANGLES;
+            case KIND_CIRCLE:
+                return MainWindow.Mode.CREATING_CIRCLES;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Checks whether file starts with magic bytes of this format
+     * @param path file path
+     * @return true if file is a document in this format, false otherwise (eg. file saved by first release)
+     * @throws IOException
+     */
+    public static boolean isDocument(String path) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            byte[] magic = new byte[4];
+            int read = 0;
+            while(read < magic.length) {
+                int n = in.read(magic, read, magic.length - read);
+                if(n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+            int value = ((magic[0] & 0xff) << 24) | ((magic[1] & 0xff) << 16) | ((magic[2] & 0xff) << 8) | (magic[3] & 0xff);
+            return value == MAGIC;
+        }
+    }
+
+    /**
+     * Writes all shapes that have at least one vertex to file
+     * @param state shapes and next free ID
+     * @param path file path
+     * @throws IOException
+     */
+    public static void save(GeometricCanvasSavedState state, String path) throws IOException {
+        save(state, path, newGeneration(), ProgressListener.NONE);
+    }
+
+    /**
+     * Generates random generation token for document about to be written
+     * @return generation, never 0
+     */
+    public static long newGeneration() {
+        long generation;
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while(generation == 0);
+        return generation;
+    }
+
+    /**
+     * Writes all shapes that have at least one vertex to file.
+     * Document is written to temporary file next to target first and moved over it when complete,
+     * so failed or cancelled save never leaves a damaged document behind.
+     * @param state shapes and next free ID
+     * @param path file path
+     * @param generation generation token stored in header
+     * @param progress receives number of shapes written
+     * @throws IOException
+     */
+    public static void save(GeometricCanvasSavedState state, String path, long generation, ProgressListener progress) throws IOException {
+        save(state.polyShapes, state.nextFreePolyShapeID, path, generation, progress);
+    }
+
+    /**
+     * Writes all shapes that have at least one vertex to file, see {@link #save(GeometricCanvasSavedState, String, long, ProgressListener)}.
+     * Shapes are iterated twice, they don't have to be held in memory all at once.
+     * @param polyShapes shapes in painting order
+     * @param nextFreePolyShapeID next free ID
+     * @param path file path
+     * @param generation generation token stored in header
+     * @param progress receives number of shapes written
+     * @throws IOException
+     */
+    public static void save(Iterable<PolyShape> polyShapes, long nextFreePolyShapeID, String path, long generation, ProgressListener progress) throws IOException {
+        int count = 0;
+        for(PolyShape pls : polyShapes) {
+            if(pls.getCoordinatesSize() > 0) {
+                count++;
+            }
+        }
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (DocumentWriter writer = new DocumentWriter(temporary, nextFreePolyShapeID, count, generation)) {
+                int written = 0;
+                for(PolyShape pls : polyShapes) {
+                    if(pls.getCoordinatesSize() > 0) {
+                        writer.writePolyShape(pls);
+                        if(++written % PROGRESS_STEP == 0) {
+                            progress.progress(written, count);
+                        }
+                    }
+                }
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads whole document from file together with edits saved in its journal and builds geometry of shapes
+     * @param path file path
+     * @return shapes and next free ID
+     * @throws IOException
+     * @throws java.io.StreamCorruptedException if file is not a document or is damaged
+     */
+    public static GeometricCanvasSavedState load(String path) throws IOException {
+        Path file = Paths.get(path);
+        ZOrderList polyShapes = new ZOrderList();
+        long nextFreePolyShapeID;
+        long generation;
+        try (DocumentReader reader = new DocumentReader(file)) {
+            for(int i = 0; i < reader.getShapeCount(); i++) {
+                polyShapes.addLast(reader.readPolyShape());
+            }
+            nextFreePolyShapeID = reader.getNextFreePolyShapeID();
+            generation = reader.getGeneration();
+        }
+        EditJournal.Contents journal = EditJournal.read(path, generation);
+        nextFreePolyShapeID = Math.max(nextFreePolyShapeID, EditJournal.replay(polyShapes, journal.records));
+        GeometricCanvasSavedState state = new GeometricCanvasSavedState(new LinkedList<>(polyShapes), nextFreePolyShapeID);
+        GeometryBuilder.build(state.polyShapes);
+        return state;
+    }
+}
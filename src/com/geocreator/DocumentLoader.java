@@ -0,0 +1,224 @@
+package com.geocreator;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Opens document on background I/O thread and hands shapes to {@link GeometricCanvas} in batches as they are read,
+ * so the drawing shows up and fills in while the rest of the file is still being loaded.
+ * Progress is shown in title bar of {@link MainWindow}.<br>
+ * Geometry of shapes is not stored in document, it is built by {@link GeometryBuilder} in parallel for each batch
+ * while the next one is read, before the batch is handed over to Event Dispatch Thread.
+ * Documents saved by first release can't be streamed - they are imported whole and then handed over in batches.
+ * Edits saved in journal of the document are read last and applied by canvas when loading finishes.<br>
+ * Big documents are opened out-of-core (see {@link PagedDocument}) - the loader only scans them to build page index
+ * and hands pages over to canvas instead of shapes.
+ * @see DocumentReader
+ * @see LegacyDocumentImporter
+ */
+public class DocumentLoader extends SwingWorker<Long, Void> {
+    private static final int BATCH_SIZE = 1024;             // maximal number of shapes handed over at once
+    private static final long BATCH_NANOS = 50000000L;      // maximal time shapes wait to be handed over
+
+    private MainWindow outerWindow;
+    private GeometricCanvas canvas;
+    private String path;
+
+    private long generation = 0;                // generation of document, 0 if it has none
+    private EditJournal.Contents journal;       // edits saved in journal of document
+    private List<PolyShape> journalled = new ArrayList<>();    // shapes of document opened out-of-core changed by journal
+
+    private List<PolyShape> batch = new ArrayList<>();
+    private long batchStart = System.nanoTime();
+    private List<PolyShape> building;           // batch whose geometry is being built, handed over next
+    private ForkJoinTask<Void> buildTask;
+
+    /**
+     * Creates loader, it is not started until {@link #start()}
+     * @param mw main window
+     * @param canvas canvas shapes are handed to
+     * @param path file path to load from
+     */
+    public DocumentLoader(MainWindow mw, GeometricCanvas canvas, String path) {
+        this.outerWindow = mw;
+        this.canvas = canvas;
+        this.path = path;
+    }
+
+    /**
+     * Queues loading on I/O thread, after saves and exports started before
+     */
+    public void start() {
+        addPropertyChangeListener(event -> {
+            if("progress".equals(event.getPropertyName()) && !isDone() && !isCancelled()) {
+                outerWindow.setLoadProgress((Integer)event.getNewValue());
+            }
+        });
+        outerWindow.setLoadProgress(0);
+        BackgroundOperation.execute(this);
+    }
+
+    /**
+     * Adds shape to current batch and hands the batch over when it is full or waits too long
+     * @param pls loaded shape
+     * @param loaded number of shapes loaded so far
+     * @param total number of shapes in document
+     */
+    private void add(PolyShape pls, int loaded, int total) {
+        batch.add(pls);
+        if(batch.size() >= BATCH_SIZE || System.nanoTime() - batchStart >= BATCH_NANOS) {
+            flush();
+            setProgress((int)(100L * loaded / total));
+        }
+    }
+
+    /**
+     * Hands scanned pages of document opened out-of-core over to canvas
+     * @param pages scanned pages, handed over list is replaced by new one
+     * @return list for next pages
+     */
+    private List<PagedDocument.Page> flushPages(List<PagedDocument.Page> pages) {
+        if(!pages.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                if(!isCancelled()) {
+                    canvas.appendLoadedPages(pages);
+                }
+            });
+        }
+        batchStart = System.nanoTime();
+        return new ArrayList<>();
+    }
+
+    /**
+     * Returns shapes of document opened out-of-core that are changed by its journal, in painting order
+     * @return changed shapes
+     */
+    List<PolyShape> getJournalledShapes() {
+        return journalled;
+    }
+
+    /**
+     * Starts building geometry of current batch in parallel, while next batch is read.
+     * Previous batch is handed over to canvas once its geometry is built.
+     */
+    private void flush() {
+        if(!batch.isEmpty()) {
+            handOver();
+            building = batch;
+            buildTask = GeometryBuilder.submit(batch);
+            batch = new ArrayList<>();
+        }
+        batchStart = System.nanoTime();
+    }
+
+    /**
+     * Waits until geometry of batch being built is ready and hands the batch over to canvas.
+     * Batches are delivered in order, all of them before {@link #done()}.
+     */
+    private void handOver() {
+        if(building != null) {
+            buildTask.join();
+            List<PolyShape> shapes = building;
+            SwingUtilities.invokeLater(() -> {
+                if(!isCancelled()) {
+                    canvas.appendLoadedShapes(shapes);
+                }
+            });
+            building = null;
+            buildTask = null;
+        }
+    }
+
+    @Override
+    protected Long doInBackground() throws Exception {
+        long start = System.nanoTime();
+        long nextFreePolyShapeID;
+        int total;
+        if(PagedDocument.shouldOpen(path)) {
+            // only page index is built, shapes stay in file except those journal changes
+            try(DocumentReader reader = new DocumentReader(Paths.get(path))) {
+                total = reader.getShapeCount();
+                generation = reader.getGeneration();
+                journal = EditJournal.read(path, generation);
+                Set<Long> journalledIDs = new HashSet<>();
+                for(EditRecord record : journal.records) {
+                    journalledIDs.add(record.id);
+                }
+                PagedDocument document = new PagedDocument(path);
+                SwingUtilities.invokeLater(() -> canvas.attachPagedDocument(this, document));
+
+                List<PagedDocument.Page> pages = new ArrayList<>();
+                int pageCount = (total + PagedDocument.PAGE_SHAPES - 1) / PagedDocument.PAGE_SHAPES;
+                for(int p = 0; p < pageCount && !isCancelled(); p++) {
+                    int count = Math.min(PagedDocument.PAGE_SHAPES, total - p * PagedDocument.PAGE_SHAPES);
+                    pages.add(PagedDocument.scanPage(reader, p, count, journalledIDs, journalled));
+                    if(System.nanoTime() - batchStart >= BATCH_NANOS) {
+                        pages = flushPages(pages);
+                        setProgress((int)(100L * (p + 1) / pageCount));
+                    }
+                }
+                flushPages(pages);
+                nextFreePolyShapeID = reader.getNextFreePolyShapeID();
+            }
+        } else if(DocumentFormat.isDocument(path)) {
+            try(DocumentReader reader = new DocumentReader(Paths.get(path))) {
+                total = reader.getShapeCount();
+                for(int i = 0; i < total && !isCancelled(); i++) {
+                    add(reader.readPolyShape(), i + 1, total);
+                }
+                nextFreePolyShapeID = reader.getNextFreePolyShapeID();
+                generation = reader.getGeneration();
+            }
+            journal = EditJournal.read(path, generation);
+        } else {
+            GeometricCanvasSavedState state = LegacyDocumentImporter.importFile(path);
+            total = state.polyShapes.size();
+            int loaded = 0;
+            for(PolyShape pls : state.polyShapes) {
+                if(isCancelled()) {
+                    break;
+                }
+                add(pls, ++loaded, total);
+            }
+            nextFreePolyShapeID = state.nextFreePolyShapeID;
+            journal = EditJournal.read(path, 0);
+        }
+        flush();
+        handOver();
+        System.out.printf("[DocumentLoader] Read %d shapes from %s in %.1f ms%n", total, path, (System.nanoTime() - start) / 1e6);
+        return nextFreePolyShapeID;
+    }
+
+    @Override
+    protected void done() {
+        if(isCancelled()) {
+            System.out.println("[DocumentLoader] Loading of " + path + " cancelled");
+            return;
+        }
+        outerWindow.setLoadProgress(-1);
+        try {
+            canvas.finishLoading(this, get(), path, generation, journal);
+            outerWindow.setCurrentFile(path);
+            outerWindow.setNewFileFlag(false);
+            JOptionPane.showMessageDialog(outerWindow, "File loaded successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (ExecutionException | InterruptedException e) {
+            // keep what was read, but never let it be saved over the damaged file
+            canvas.finishLoading(this, 0, path, 0, null);
+            outerWindow.setNewFileFlag(true);
+            System.out.println("[DocumentLoader] Loading of " + path + " failed: " + e.getCause());
+            if(e.getCause() instanceof StreamCorruptedException) {
+                JOptionPane.showMessageDialog(null, "Wrong file type or corrupted data.", "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(null, "Could not open file.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+}
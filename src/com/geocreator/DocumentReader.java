@@ -0,0 +1,197 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads {@link PolyShape} records in {@link DocumentFormat} through a buffered {@link FileChannel}.
+ * Header is read and validated on construction, shapes are read one by one in painting order.
+ * Records already in memory can be read without a file.
+ * @see DocumentFormat
+ * @see DocumentWriter
+ */
+public class DocumentReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long nextFreePolyShapeID;
+    private int shapeCount;
+    private long generation = 0;
+
+    /**
+     * Opens file and reads document header
+     * @param path file path
+     * @throws IOException
+     * @throws StreamCorruptedException if file is not a document or was written by newer version
+     */
+    public DocumentReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+        try {
+            require(DocumentFormat.HEADER_SIZE_V1);
+            if(buffer.getInt() != DocumentFormat.MAGIC) {
+                throw new StreamCorruptedException("Not a GeoCreator document");
+            }
+            int version = buffer.getShort() & 0xffff;
+            if(version < 1 || version > DocumentFormat.VERSION) {
+                throw new StreamCorruptedException("Unsupported document version " + version);
+            }
+            buffer.getShort(); // flags
+            nextFreePolyShapeID = buffer.getLong();
+            shapeCount = buffer.getInt();
+            if(shapeCount < 0) {
+                throw new StreamCorruptedException("Invalid number of shapes " + shapeCount);
+            }
+            if(version >= 2) {
+                require(DocumentFormat.HEADER_SIZE - DocumentFormat.HEADER_SIZE_V1);
+                generation = buffer.getLong();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads shape records from memory, eg. part of document mapped by {@link PagedDocument}
+     * @param records buffer positioned at first record
+     */
+    DocumentReader(ByteBuffer records) {
+        buffer = records;
+    }
+
+    /**
+     * Returns next ID to be assigned to newly created PolyShape
+     * @return next free ID
+     */
+    public long getNextFreePolyShapeID() {
+        return nextFreePolyShapeID;
+    }
+
+    /**
+     * Returns generation token of document, journal written against it carries the same one
+     * @return generation or 0 if document was written by version without generations
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns number of shape records stored in file
+     * @return number of shapes
+     */
+    public int getShapeCount() {
+        return shapeCount;
+    }
+
+    /**
+     * Returns position in file of next record to be read
+     * @return byte offset from start of file
+     * @throws IOException
+     */
+    public long getPosition() throws IOException {
+        return channel.position() - buffer.remaining();
+    }
+
+    /**
+     * Makes sure at least specified number of bytes is buffered, reading more from channel if needed
+     * @param bytes needed bytes
+     * @throws IOException
+     * @throws StreamCorruptedException if file ends too early
+     */
+    private void require(int bytes) throws IOException {
+        if(buffer.remaining() >= bytes) {
+            return;
+        }
+        if(channel == null) {
+            throw new StreamCorruptedException("Unexpected end of document");
+        }
+        buffer.compact();
+        while(buffer.position() < bytes) {
+            if(channel.read(buffer) < 0) {
+                throw new StreamCorruptedException("Unexpected end of document");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Reads unsigned variable length integer, 7 bits per byte
+     * @return read value
+     * @throws IOException
+     */
+    private int getVarInt() throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            require(1);
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads next shape record
+     * @return restored shape
+     * @throws IOException
+     * @throws StreamCorruptedException if record is damaged
+     */
+    public PolyShape readPolyShape() throws IOException {
+        require(30);
+        MainWindow.Mode mode = DocumentFormat.modeOf(buffer.get());
+        int encoding = buffer.get();
+        long id = buffer.getLong();
+        Color backgroundColor = new Color(buffer.getInt(), true);
+        double scaleTransformFactor = buffer.getDouble();
+        int rotateTransformIndex = buffer.getInt();
+        int size = buffer.getInt();
+        if(mode == null || size < 0) {
+            throw new StreamCorruptedException("Damaged shape record");
+        }
+
+        double[] coords = new double[2 * size];
+        if(encoding == DocumentFormat.COORDS_DELTA_VARINT) {
+            int x = 0;
+            int y = 0;
+            for(int i = 0; i < coords.length; i += 2) {
+                int dx = getVarInt();
+                int dy = getVarInt();
+                x += (dx >>> 1) ^ -(dx & 1);
+                y += (dy >>> 1) ^ -(dy & 1);
+                coords[i] = x;
+                coords[i+1] = y;
+            }
+        } else if(encoding == DocumentFormat.COORDS_FLOAT64) {
+            for(int i = 0; i < coords.length; i++) {
+                require(8);
+                coords[i] = buffer.getDouble();
+            }
+        } else {
+            throw new StreamCorruptedException("Unknown coordinates encoding " + encoding);
+        }
+
+        return new PolyShape(id, mode, backgroundColor, scaleTransformFactor, rotateTransformIndex, coords);
+    }
+
+    /**
+     * Closes file
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.geocreator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@link PolyShape} records in {@link DocumentFormat} through a buffered {@link FileChannel}.
+ * Header is written on construction, so number of shapes has to be known upfront.
+ * @see DocumentFormat
+ * @see DocumentReader
+ */
+public class DocumentWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Creates (or truncates) file and writes document header
+     * @param path file path
+     * @param nextFreePolyShapeID next ID to be assigned to newly created PolyShape
+     * @param shapeCount number of shapes that will be written
+     * @param generation generation token of written document
+     * @throws IOException
+     */
+    public DocumentWriter(Path path, long nextFreePolyShapeID, int shapeCount, long generation) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(DocumentFormat.MAGIC);
+        buffer.putShort((short)DocumentFormat.VERSION);
+        buffer.putShort((short)0);
+        buffer.putLong(nextFreePolyShapeID);
+        buffer.putInt(shapeCount);
+        buffer.putLong(generation);
+    }
+
+    /**
+     * Makes sure there is space for specified number of bytes in buffer, flushing it to channel if needed
+     * @param bytes needed space
+     * @throws IOException
+     */
+    private void require(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes buffered bytes to channel
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes unsigned variable length integer, 7 bits per byte
+     * @param value value to be written
+     */
+    private void putVarInt(int value) {
+        while((value & ~0x7f) != 0) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Checks whether all vertices have whole coordinates that can be stored as deltas
+     * @param pls shape
+     * @return true if vertices can be stored as variable length deltas
+     */
+    private static boolean hasWholeCoordinates(PolyShape pls) {
+        for(int i = 0; i < pls.getCoordinatesSize(); i++) {
+            double x = pls.getPointX(i);
+            double y = pls.getPointY(i);
+            if(x != Math.rint(x) || y != Math.rint(y) || Math.abs(x) > (1 << 29) || Math.abs(y) > (1 << 29)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes single shape record
+     * @param pls shape to be written
+     * @throws IOException
+     */
+    public void writePolyShape(PolyShape pls) throws IOException {
+        int size = pls.getCoordinatesSize();
+        boolean whole = hasWholeCoordinates(pls);
+
+        require(30);
+        buffer.put((byte)DocumentFormat.kindOf(pls.getMode()));
+        buffer.put((byte)(whole ? DocumentFormat.COORDS_DELTA_VARINT : DocumentFormat.COORDS_FLOAT64));
+        buffer.putLong(pls.getID());
+        buffer.putInt(pls.getBackGroundColor().getRGB());
+        buffer.putDouble(pls.getScaleTransformFactor());
+        buffer.putInt(pls.getRotateTransformIndex());
+        buffer.putInt(size);
+
+        if(whole) {
+            int lastX = 0;
+            int lastY = 0;
+            for(int i = 0; i < size; i++) {
+                int x = (int)pls.getPointX(i);
+                int y = (int)pls.getPointY(i);
+                int dx = x - lastX;
+                int dy = y - lastY;
+                require(10);
+                putVarInt((dx << 1) ^ (dx >> 31));
+                putVarInt((dy << 1) ^ (dy >> 31));
+                lastX = x;
+                lastY = y;
+            }
+        } else {
+            for(int i = 0; i < size; i++) {
+                require(16);
+                buffer.putDouble(pls.getPointX(i));
+                buffer.putDouble(pls.getPointY(i));
+            }
+        }
+    }
+
+    /**
+     * Flushes remaining bytes, forces them to storage device and closes file
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
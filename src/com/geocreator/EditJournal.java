@@ -0,0 +1,352 @@
+package com.geocreator;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of edits saved since document was last written whole.<br>
+ * Journal lives next to the document in file {@code <document>.journal}. It starts with a header - magic bytes "GEOJ",
+ * version (2 bytes), flags (2 bytes, unused) and generation token of the document it belongs to (8 bytes) -
+ * followed by {@link EditRecord}s. Journal is only applied to document with the same generation, so journal left over
+ * from before the document was rewritten is ignored. Record that was not completely written (eg. because of a crash)
+ * ends the journal.<br>
+ * Canvas records every edit into the journal as it happens. Saving appends records gathered since the previous save
+ * and forces them to storage device, so it costs the same regardless of document size. Once journal grows over
+ * {@code geocreator.journalCompactBytes} (1 MiB by default) it is folded into the document in background.<br>
+ * Recording and deciding how to save happens on Event Dispatch Thread, file writes on the background I/O thread
+ * (see {@link BackgroundOperation}) in order they were scheduled.
+ * @see EditRecord
+ * @see DocumentFormat
+ */
+public class EditJournal {
+    public static final int MAGIC = 0x47454F4A;     // "GEOJ"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final String SUFFIX = ".journal";
+    public static final long COMPACT_BYTES = Long.getLong("geocreator.journalCompactBytes", 1 << 20);
+
+    /**
+     * Records read from journal file
+     */
+    public static class Contents {
+        public final List<EditRecord> records;
+        public final long validSize;    // bytes of journal up to last complete record, 0 if journal can't be used
+
+        Contents(List<EditRecord> records, long validSize) {
+            this.records = records;
+            this.validSize = validSize;
+        }
+    }
+
+    // state used on Event Dispatch Thread
+    private String documentPath;        // document edits are appended to, null if it has to be written whole first
+    private long generation;            // generation of that document
+    private long size;                  // expected journal size once all scheduled appends are done
+    private List<EditRecord> pending = new ArrayList<>();   // edits not saved yet
+
+    // state used on I/O thread
+    private String filePath;            // journal file fileSize is known for
+    private long fileGeneration;
+    private long fileSize;              // bytes of journal file up to last complete record, 0 if it has to be started anew
+    private volatile boolean broken = false;    // journal may not match document, it has to be written whole
+
+    /**
+     * Returns path of journal belonging to document
+     * @param documentPath document path
+     * @return journal path
+     */
+    public static Path journalPath(String documentPath) {
+        return Paths.get(documentPath + SUFFIX);
+    }
+
+    /**
+     * Records edit done on canvas. Merges it with previous record where possible.
+     * @param record edit
+     */
+    public void record(EditRecord record) {
+        if(!pending.isEmpty()) {
+            EditRecord merged = pending.get(pending.size() - 1).coalesce(record);
+            if(merged != null) {
+                pending.set(pending.size() - 1, merged);
+                return;
+            }
+        }
+        pending.add(record);
+    }
+
+    /**
+     * Checks if edits can be saved by appending them to journal of specified document
+     * @param path document path
+     * @return true if journal belongs to that document and is in order
+     */
+    public boolean canAppendTo(String path) {
+        return documentPath != null && documentPath.equals(path) && !broken;
+    }
+
+    /**
+     * Makes next save write document whole. Used after canvas changed in a way records can't describe,
+     * eg. shape was put back between other shapes by undo.
+     */
+    public void requireRewrite() {
+        documentPath = null;
+    }
+
+    /**
+     * Checks if journal grew big enough to be folded into document
+     * @return true if document should be written whole
+     */
+    public boolean needsCompaction() {
+        return size > COMPACT_BYTES;
+    }
+
+    /**
+     * Takes edits recorded since last save, they are expected to be appended
+     * @return recorded edits
+     */
+    public List<EditRecord> takePending() {
+        List<EditRecord> records = pending;
+        pending = new ArrayList<>();
+        for(EditRecord record : records) {
+            size += EditRecord.FRAME_SIZE + record.payloadSize();
+        }
+        return records;
+    }
+
+    /**
+     * Binds journal to document that was (or is scheduled to be) written whole. Recorded edits are dropped,
+     * they are part of the document.
+     * @param path document path
+     * @param generation document generation
+     * @param journalSize current size of its journal
+     */
+    public void bind(String path, long generation, long journalSize) {
+        this.documentPath = path;
+        this.generation = generation;
+        this.size = journalSize;
+        this.pending = new ArrayList<>();
+    }
+
+    /**
+     * Returns generation of document journal is bound to
+     * @return generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Marks journal out of sync with document after a failed write, document has to be written whole on next save.
+     * Called on I/O thread.
+     */
+    public void markBroken() {
+        broken = true;
+    }
+
+    /**
+     * Remembers size of journal file of specified document generation. Called on I/O thread.
+     * @param path document path
+     * @param generation document generation
+     * @param validSize size of journal up to last complete record
+     */
+    private void attach(String path, long generation, long validSize) {
+        filePath = path;
+        fileGeneration = generation;
+        fileSize = validSize;
+    }
+
+    /**
+     * Starts new empty journal for document that was just written whole. Called on I/O thread.
+     * @param path document path
+     * @param generation generation of written document
+     * @throws IOException
+     */
+    public void reset(String path, long generation) throws IOException {
+        attach(path, generation, 0);
+        append(path, generation, Collections.emptyList());
+        broken = false;
+    }
+
+    /**
+     * Appends records to journal and forces them to storage device. Called on I/O thread.
+     * Journal is started anew if it does not exist or belongs to another generation of document,
+     * incompletely written record at its end is overwritten.
+     * @param path document path
+     * @param generation document generation
+     * @param records records to append
+     * @throws IOException
+     */
+    public void append(String path, long generation, List<EditRecord> records) throws IOException {
+        if(broken) {
+            throw new IOException("Journal is out of sync with document");
+        }
+        if(!path.equals(filePath) || generation != fileGeneration) {
+            attach(path, generation, read(path, generation).validSize);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records.size() * (EditRecord.FRAME_SIZE + EditRecord.MAX_PAYLOAD_SIZE));
+        if(fileSize == 0) {
+            buffer.putInt(MAGIC);
+            buffer.putShort((short)VERSION);
+            buffer.putShort((short)0);
+            buffer.putLong(generation);
+        }
+        CRC32 crc = new CRC32();
+        for(EditRecord record : records) {
+            int start = buffer.position() + 1;
+            buffer.put((byte)record.payloadSize());
+            record.writePayload(buffer);
+            crc.reset();
+            crc.update(buffer.array(), start, record.payloadSize());
+            buffer.putInt((int)crc.getValue());
+        }
+        buffer.flip();
+
+        try(FileChannel channel = FileChannel.open(journalPath(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(fileSize);
+            channel.position(fileSize);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            fileSize = channel.position();
+        } catch (IOException e) {
+            markBroken();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads journal of document
+     * @param documentPath document path
+     * @param generation generation of the document, journal of any other generation is ignored
+     * @return records of journal, empty if there is no journal for this generation
+     * @throws IOException
+     */
+    public static Contents read(String documentPath, long generation) throws IOException {
+        List<EditRecord> records = new ArrayList<>();
+        if(generation == 0) {
+            return new Contents(records, 0);
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(journalPath(documentPath)));
+        } catch (NoSuchFileException e) {
+            return new Contents(records, 0);
+        }
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return new Contents(records, 0);
+        }
+        buffer.getShort(); // flags
+        if(buffer.getLong() != generation) {
+            System.out.println("[EditJournal] Ignoring journal of another generation of " + documentPath);
+            return new Contents(records, 0);
+        }
+
+        CRC32 crc = new CRC32();
+        long validSize = buffer.position();
+        while(buffer.remaining() > 0) {
+            int size = buffer.get() & 0xff;
+            if(buffer.remaining() < size + 4) {
+                break;
+            }
+            int start = buffer.position();
+            crc.reset();
+            crc.update(buffer.array(), start, size);
+            ByteBuffer payload = buffer.slice();
+            payload.limit(size);
+            buffer.position(start + size);
+            if(buffer.getInt() != (int)crc.getValue()) {
+                break;
+            }
+            try {
+                records.add(EditRecord.readPayload(payload, size));
+            } catch (StreamCorruptedException | BufferUnderflowException e) {
+                break;
+            }
+            validSize = buffer.position();
+        }
+        if(validSize < buffer.limit()) {
+            System.out.println("[EditJournal] Journal of " + documentPath + " ends with incomplete record, ignoring the rest");
+        }
+        return new Contents(records, validSize);
+    }
+
+    /**
+     * Applies records to shapes.
+     * Records of shapes that do not exist and records adding shape that already exists are skipped.
+     * @param shapes shapes in painting order, changed in place
+     * @param records records to apply in order
+     * @return ID following highest ID of shapes added by records, 0 if no shape was added
+     */
+    public static long replay(List<PolyShape> shapes, List<EditRecord> records) {
+        if(records.isEmpty()) {
+            return 0;
+        }
+        HashMap<Long, PolyShape> byID = new HashMap<>();
+        for(PolyShape pls : shapes) {
+            byID.put(pls.getID(), pls);
+        }
+
+        long nextFreeID = 0;
+        int skipped = 0;
+        for(EditRecord record : records) {
+            if(record.op == EditRecord.ADD_SHAPE) {
+                if(byID.containsKey(record.id)) {
+                    skipped++;
+                    continue;
+                }
+                PolyShape pls = new PolyShape(record.id, record.getMode(), record.getColor(), 1.0, 0, new double[0]);
+                shapes.add(pls);
+                byID.put(record.id, pls);
+                nextFreeID = Math.max(nextFreeID, record.id + 1);
+                continue;
+            }
+            PolyShape pls = byID.get(record.id);
+            if(pls == null) {
+                skipped++;
+                continue;
+            }
+            switch(record.op) {
+                case EditRecord.ADD_POINT:
+                    pls.addPointCoord(record.x, record.y);
+                    break;
+                case EditRecord.MOVE:
+                    pls.move(record.x, record.y);
+                    break;
+                case EditRecord.SCALE:
+                    pls.setScaleTransformFactor(record.x);
+                    break;
+                case EditRecord.ROTATE:
+                    pls.setRotateTransformIndex(record.value);
+                    break;
+                case EditRecord.RECOLOR:
+                    pls.setBackgroundColor(record.getColor());
+                    break;
+                case EditRecord.REORDER:
+                    shapes.remove(pls);
+                    if(record.value != 0) {
+                        shapes.add(pls);
+                    } else {
+                        shapes.add(0, pls);
+                    }
+                    break;
+                case EditRecord.DELETE:
+                    shapes.remove(pls);
+                    byID.remove(record.id);
+                    break;
+            }
+        }
+        System.out.println("[EditJournal] Replayed " + records.size() + " edits" + (skipped > 0 ? ", " + skipped + " of unknown shapes skipped" : ""));
+        return nextFreeID;
+    }
+}
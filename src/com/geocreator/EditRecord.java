@@ -0,0 +1,252 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Single edit operation done on canvas to {@link PolyShape} with given ID, as stored in {@link EditJournal}.<br>
+ * Each record is stored as payload length (1 byte), payload and CRC32 of payload (4 bytes).
+ * Payload starts with operation (1 byte) and shape ID (8 bytes) followed by operation's arguments:
+ * <br>- add shape: shape kind (1 byte) and background color as ARGB (4 bytes)
+ * <br>- add point: x and y (8 bytes each)
+ * <br>- move: distance shape was moved by along x and y, as passed to {@link PolyShape#move(double, double)} (8 bytes each)
+ * <br>- scale: new scale transform factor (8 bytes)
+ * <br>- rotate: new rotate transform index (4 bytes)
+ * <br>- recolor: new background color as ARGB (4 bytes)
+ * <br>- reorder: 1 if shape was moved to front, 0 if to bottom (1 byte)
+ * <br>- delete: no arguments
+ * @see EditJournal
+ */
+public class EditRecord {
+    public static final int ADD_SHAPE = 1;
+    public static final int ADD_POINT = 2;
+    public static final int MOVE = 3;
+    public static final int SCALE = 4;
+    public static final int ROTATE = 5;
+    public static final int RECOLOR = 6;
+    public static final int REORDER = 7;
+    public static final int DELETE = 8;
+
+    // length byte and CRC32 framing every payload
+    static final int FRAME_SIZE = 5;
+    // largest payload of any operation
+    static final int MAX_PAYLOAD_SIZE = 25;
+
+    final int op;
+    final long id;
+    final double x;
+    final double y;
+    final int value;
+
+    private EditRecord(int op, long id, double x, double y, int value) {
+        this.op = op;
+        this.id = id;
+        this.x = x;
+        this.y = y;
+        this.value = value;
+    }
+
+    /**
+     * Shape was created (with no vertices yet)
+     * @param pls new shape
+     * @return record
+     */
+    public static EditRecord addShape(PolyShape pls) {
+        return new EditRecord(ADD_SHAPE, pls.getID(), DocumentFormat.kindOf(pls.getMode()), 0, pls.getBackGroundColor().getRGB());
+    }
+
+    /**
+     * Vertex was appended to shape
+     * @param pls changed shape
+     * @param x vertex x as passed to {@link PolyShape#addPointCoord(double, double)}
+     * @param y vertex y
+     * @return record
+     */
+    public static EditRecord addPoint(PolyShape pls, double x, double y) {
+        return new EditRecord(ADD_POINT, pls.getID(), x, y, 0);
+    }
+
+    /**
+     * Shape was moved
+     * @param pls moved shape
+     * @param x distance as passed to {@link PolyShape#move(double, double)}
+     * @param y distance
+     * @return record
+     */
+    public static EditRecord move(PolyShape pls, double x, double y) {
+        return new EditRecord(MOVE, pls.getID(), x, y, 0);
+    }
+
+    /**
+     * Scale factor of shape was changed
+     * @param pls scaled shape, already changed
+     * @return record
+     */
+    public static EditRecord scale(PolyShape pls) {
+        return new EditRecord(SCALE, pls.getID(), pls.getScaleTransformFactor(), 0, 0);
+    }
+
+    /**
+     * Rotation of shape was changed
+     * @param pls rotated shape, already changed
+     * @return record
+     */
+    public static EditRecord rotate(PolyShape pls) {
+        return new EditRecord(ROTATE, pls.getID(), 0, 0, pls.getRotateTransformIndex());
+    }
+
+    /**
+     * Background color of shape was changed
+     * @param pls recolored shape, already changed
+     * @return record
+     */
+    public static EditRecord recolor(PolyShape pls) {
+        return new EditRecord(RECOLOR, pls.getID(), 0, 0, pls.getBackGroundColor().getRGB());
+    }
+
+    /**
+     * Shape was moved to front or to bottom layer
+     * @param pls moved shape
+     * @param toFront true if moved to front, false if to bottom
+     * @return record
+     */
+    public static EditRecord reorder(PolyShape pls, boolean toFront) {
+        return new EditRecord(REORDER, pls.getID(), 0, 0, toFront ? 1 : 0);
+    }
+
+    /**
+     * Shape was deleted
+     * @param pls deleted shape
+     * @return record
+     */
+    public static EditRecord delete(PolyShape pls) {
+        return new EditRecord(DELETE, pls.getID(), 0, 0, 0);
+    }
+
+    /**
+     * Merges this record with record that directly follows it, so eg. dragging a shape leaves one record
+     * @param next following record
+     * @return merged record or null if records can't be merged
+     */
+    EditRecord coalesce(EditRecord next) {
+        if(next.id != id || next.op != op) {
+            return null;
+        }
+        switch(op) {
+            case MOVE:
+                return new EditRecord(MOVE, id, x + next.x, y + next.y, 0);
+            case SCALE:
+            case ROTATE:
+            case RECOLOR:
+                return next;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns number of payload bytes
+     * @return payload size
+     */
+    int payloadSize() {
+        switch(op) {
+            case ADD_SHAPE: return 9 + 5;
+            case ADD_POINT:
+            case MOVE: return 9 + 16;
+            case SCALE: return 9 + 8;
+            case ROTATE:
+            case RECOLOR: return 9 + 4;
+            case REORDER: return 9 + 1;
+            default: return 9;
+        }
+    }
+
+    /**
+     * Writes payload of record
+     * @param buffer buffer with at least {@link #payloadSize()} bytes remaining
+     */
+    void writePayload(ByteBuffer buffer) {
+        buffer.put((byte)op);
+        buffer.putLong(id);
+        switch(op) {
+            case ADD_SHAPE:
+                buffer.put((byte)x);
+                buffer.putInt(value);
+                break;
+            case ADD_POINT:
+            case MOVE:
+                buffer.putDouble(x);
+                buffer.putDouble(y);
+                break;
+            case SCALE:
+                buffer.putDouble(x);
+                break;
+            case ROTATE:
+            case RECOLOR:
+                buffer.putInt(value);
+                break;
+            case REORDER:
+                buffer.put((byte)value);
+                break;
+        }
+    }
+
+    /**
+     * Reads payload of record
+     * @param buffer buffer positioned at payload
+     * @param size payload size
+     * @return read record
+     * @throws StreamCorruptedException if payload does not match any operation
+     */
+    static EditRecord readPayload(ByteBuffer buffer, int size) throws StreamCorruptedException {
+        int op = buffer.get();
+        long id = buffer.getLong();
+        EditRecord record;
+        switch(op) {
+            case ADD_SHAPE:
+                int kind = buffer.get();
+                record = new EditRecord(op, id, kind, 0, buffer.getInt());
+                break;
+            case ADD_POINT:
+            case MOVE:
+                record = new EditRecord(op, id, buffer.getDouble(), buffer.getDouble(), 0);
+                break;
+            case SCALE:
+                record = new EditRecord(op, id, buffer.getDouble(), 0, 0);
+                break;
+            case ROTATE:
+            case RECOLOR:
+                record = new EditRecord(op, id, 0, 0, buffer.getInt());
+                break;
+            case REORDER:
+                record = new EditRecord(op, id, 0, 0, buffer.get());
+                break;
+            case DELETE:
+                record = new EditRecord(op, id, 0, 0, 0);
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown edit operation " + op);
+        }
+        if(record.payloadSize() != size) {
+            throw new StreamCorruptedException("Damaged edit record");
+        }
+        return record;
+    }
+
+    /**
+     * Returns mode of shape created by add shape record
+     * @return shape's mode
+     */
+    MainWindow.Mode getMode() {
+        return DocumentFormat.modeOf((int)x);
+    }
+
+    /**
+     * Returns color set by add shape or recolor record
+     * @return color
+     */
+    Color getColor() {
+        return new Color(value, true);
+    }
+}
@@ -5,14 +5,27 @@ import java.awt.event.ActionListener;
 
 /**
  * Event fired to close window with return code 0. Logs that action in terminal.
+ * Waits a while for saves and journal appends still running in background.
  */
 public class ExitEvent implements ActionListener {
+    private static final long EXIT_WAIT_MILLIS = 30000;
+
     public ExitEvent() {
 
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
         System.out.println("[Event] " + this.getClass().getSimpleName());
+        exit();
+    }
+
+    /**
+     * Waits a while for saves still running in background and exits with return code 0.
+     * {@link EditJournal} appends are scheduled on the same I/O thread, so queued ones are written out too.
+     * Used by menu item and by closing the window.
+     */
+    public static void exit() {
+        BackgroundOperation.awaitPending(EXIT_WAIT_MILLIS);
         System.exit(0);
     }
 }
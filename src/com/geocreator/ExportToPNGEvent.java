@@ -1,32 +1,73 @@
 package com.geocreator;
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 
 /**
  * Event fired to export current image drawn on canvas to file. File chooser is opened to point file you want to save to.
- * Shows message dialogs with either Success or Error message if operation was successfull or not.
+ * Scaled export asks for scale factor (eg. "8") or resolution (eg. "600dpi") first.
+ * Image is written in background, shows message dialogs with either Success or Error message if operation was successfull or not.
+ * @see BackgroundOperation
  */
 public class ExportToPNGEvent implements ActionListener {
     private MainWindow outerWindow;
+    private boolean scaled;     // true if user chooses scale of exported image
 
     public ExportToPNGEvent(MainWindow mw) {
+        this(mw, false);
+    }
+
+    public ExportToPNGEvent(MainWindow mw, boolean scaled) {
         this.outerWindow = mw;
+        this.scaled = scaled;
+    }
+
+    /**
+     * Asks user for scale factor or resolution of exported image
+     * @return scale factor or 0 if user cancelled
+     */
+    private double askForScale() {
+        String input = JOptionPane.showInputDialog(outerWindow,
+                "Scale factor (eg. 8) or resolution (eg. 600dpi):", "Export to PNG", JOptionPane.QUESTION_MESSAGE);
+        if(input == null) {
+            return 0;
+        }
+        input = input.trim().toLowerCase();
+        try {
+            double scale;
+            if(input.endsWith("dpi")) {
+                scale = Double.parseDouble(input.substring(0, input.length() - 3).trim()) / Toolkit.getDefaultToolkit().getScreenResolution();
+            } else {
+                scale = Double.parseDouble(input);
+            }
+            if(scale > 0 && !Double.isInfinite(scale)) {
+                return scale;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        JOptionPane.showMessageDialog(outerWindow, "Invalid scale: " + input, "Error", JOptionPane.ERROR_MESSAGE);
+        return 0;
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
         try {
+            double scale = 1;
+            if(scaled && (scale = askForScale()) == 0) {
+                return;
+            }
             JFileChooser fc = new JFileChooser();
             int returnVal = fc.showSaveDialog(outerWindow);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 String path = fc.getSelectedFile().getPath();
-                outerWindow.cvs.exportToPNG(path);
+                new BackgroundOperation(outerWindow, "Exporting " + path, "File exported sucessfully.", "File export failed.",
+                        outerWindow.cvs.prepareExportToPNG(path, scale), null).start();
             } else {
                 throw new IOException("No file approved.");
             }
-            JOptionPane.showMessageDialog(outerWindow, "File exported sucessfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "File export failed.", "Error", JOptionPane.ERROR_MESSAGE);
         }
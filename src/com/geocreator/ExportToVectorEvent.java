@@ -0,0 +1,44 @@
+package com.geocreator;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+
+/**
+ * Event fired to export shapes drawn on canvas to vector image (SVG or PDF). File chooser is opened to point file you want to save to.
+ * Image is written in background, shows message dialogs with either Success or Error message if operation was successfull or not.
+ * @see VectorExporter
+ * @see BackgroundOperation
+ */
+public class ExportToVectorEvent implements ActionListener {
+    private MainWindow outerWindow;
+    private VectorExporter.Format format;
+
+    public ExportToVectorEvent(MainWindow mw, VectorExporter.Format format) {
+        this.outerWindow = mw;
+        this.format = format;
+    }
+
+    public void actionPerformed(ActionEvent actionEvent) {
+        try {
+            JFileChooser fc = new JFileChooser();
+            fc.setFileFilter(new FileNameExtensionFilter(format + " image", format.getExtension()));
+            int returnVal = fc.showSaveDialog(outerWindow);
+            if (returnVal == JFileChooser.APPROVE_OPTION) {
+                String path = fc.getSelectedFile().getPath();
+                if(!path.toLowerCase().endsWith("." + format.getExtension())) {
+                    path += "." + format.getExtension();
+                }
+                new BackgroundOperation(outerWindow, "Exporting " + path, "File exported sucessfully.", "File export failed.",
+                        outerWindow.cvs.prepareExportToVector(path, format), null).start();
+            } else {
+                throw new IOException("No file approved.");
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "File export failed.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        System.out.println("[Event] " + this.getClass().getSimpleName());
+    }
+}
@@ -1,12 +1,14 @@
 package com.geocreator;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.*;
-import java.util.LinkedList;
+import java.util.*;
+import java.util.List;
 
 /**
  * {@link GeometricCanvas} is destined to hold 2D shapes and render them.<br>
@@ -21,13 +23,20 @@ import java.util.LinkedList;
  * @see MainWindow
  */
 public class GeometricCanvas extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener {
-    private LinkedList<PolyShape> polyShapes;   // holds all shapes to render
+    // how many times per second gathered drag and wheel input is applied, 0 applies every event right away
+    public static final int INPUT_FPS = Integer.getInteger("geocreator.inputFps", 60);
+
+    private ZOrderList polyShapes;              // holds all shapes to render in painting order
+    private ShapeIndex shapeIndex = new ShapeIndex();   // finds shapes by position on canvas
     private PolyShape actualPolyShape;      // current active PolyShape
     private long nextFreePolyShapeID = 0;    // next ID to be assigned to newly created PolyShape
     private MainWindow outerWindow;         // Access components from MainWindow
     private MainWindow.Mode lastMode;       // used to check from which mode was changed
-    private Point mousePos = new Point(0,0);
-    private boolean hideMousePosAndCanvasDimension = false;
+    private Point mousePos = new Point(0,0);  // mouse position on canvas
+    private Viewport view = Viewport.IDENTITY;  // zoom and pan, maps drawing to canvas
+
+    // true while the view is dragged with middle mouse button
+    private boolean panning = false;
 
     // true if user pressed mouse inside of any PolyShape
     // false otherwise
@@ -40,63 +49,558 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
     // shape rotation key modifier
     private boolean rotateModeCtrlKeyPressed = false;
 
+    // drag and wheel input gathered since last frame, applied to pendingShape at once
+    private javax.swing.Timer inputTimer = new javax.swing.Timer(INPUT_FPS > 0 ? 1000 / INPUT_FPS : 0, e -> flushInput());
+    private PolyShape pendingShape;         // null if no input is pending
+    private double pendingMoveX;            // summed drag distance as passed to PolyShape.move
+    private double pendingMoveY;
+    private double pendingScaleFactor;      // scale factor after all wheel notches
+    private int pendingRotateIndex;         // rotate index after all wheel notches
+
+    // cached rendering of all shapes except actual one
+    private LayerCache layerCache = new LayerCache();
+    private boolean layerCacheEnabled = Boolean.parseBoolean(System.getProperty("geocreator.layerCache", "true"));
+
+    // rasterizes versions of scene off Event Dispatch Thread
+    private SceneRenderer sceneRenderer = new SceneRenderer(this, layerCacheEnabled);
+    private long shapesVersion = 0;         // bumped whenever shapes, their order or actual shape change
+    private long publishedVersion = -1;     // shapesVersion of latest version handed over to sceneRenderer
+    private Scene published;
+
+    // shapes skipped by latest painting on Event Dispatch Thread because they were outside of painted area
+    private int skippedShapeCount = 0;
+
+    // document being loaded in background, shapes can't be edited until it finishes
+    private DocumentLoader loader;
+
+    // edits not saved yet, saving appends them to journal of the document
+    private EditJournal journal = new EditJournal();
+
+    // changes that can be undone
+    private UndoHistory history = new UndoHistory();
+
+    // big document opened out-of-core, painted between shapes of polyShapes with negative and non-negative z-order
+    private PagedDocument pagedDocument;
+
     /**
-     * Prepares a helper object containing current drawn shapes and next free ID as a serializable object
-     * @return Canvas saved state
+     * Returns area of canvas covered by specified shape including its (possibly widened) border.
+     * Used to repaint only the damaged part of canvas.
+     * @param pls shape
+     * @return area of canvas covered by shape in current view or null if shape is not drawable
      */
-    private GeometricCanvasSavedState getSaveState() {
-        return new GeometricCanvasSavedState(polyShapes, nextFreePolyShapeID);
+    private Rectangle damagedArea(PolyShape pls) {
+        if(pls == null || !pls.isDrawable()) {
+            return null;
+        }
+        Rectangle2D area = pls.getBounds2D();
+        double border = ShapeRenderer.BORDER_MARGIN;
+        return view.toCanvas(new Rectangle2D.Double(area.getX() - border, area.getY() - border,
+                area.getWidth() + 2 * border, area.getHeight() + 2 * border));
     }
 
     /**
-     * Writes what canvas has on itself to file with extension PNG
-     * @param path file path to export to
+     * Repaints area covered by shape before it changed together with area covered by it now.
+     * @param before area covered by shape before change, might be null
+     * @param pls changed shape
+     */
+    private void repaintDamage(Rectangle before, PolyShape pls) {
+        Rectangle after = damagedArea(pls);
+        if(before != null) {
+            repaint(after != null ? before.union(after) : before);
+        } else if(after != null) {
+            repaint(after);
+        }
+    }
+
+    /**
+     * Text displayed in left bottom corner of canvas
+     * @return mouse position on the drawing and zoom
+     */
+    private String mousePosText() {
+        Point2D pos = view.toWorld(mousePos);
+        return "PosX: " + (int)Math.floor(pos.getX()) + "px | PosY: " + (int)Math.floor(pos.getY()) + "px | Zoom: " + view;
+    }
+
+    /**
+     * Returns area of canvas occupied by mouse position text
+     * @return area of mouse position text
+     */
+    private Rectangle mousePosTextArea() {
+        FontMetrics fm = getFontMetrics(getFont());
+        int baseline = getHeight() - 5;
+        return new Rectangle(5, baseline - fm.getAscent(), fm.stringWidth(mousePosText()) + 1, fm.getAscent() + fm.getDescent());
+    }
+
+    /**
+     * Updates mouse position and repaints only the part of canvas where its old and new text is displayed
+     * @param pos new mouse position
+     */
+    private void updateMousePos(Point pos) {
+        Rectangle before = mousePosTextArea();
+        mousePos = pos;
+        repaint(before.union(mousePosTextArea()));
+    }
+
+    /**
+     * Takes cheap copy of all shapes and next free ID. Background operations can read it
+     * while shapes on canvas keep being edited.
+     * @return snapshot of canvas state
+     * @see PolyShape#snapshot()
+     */
+    public GeometricCanvasSavedState snapshot() {
+        flushInput();
+        LinkedList<PolyShape> copies = new LinkedList<>();
+        for(PolyShape pls : polyShapes) {
+            copies.add(pls.snapshot());
+        }
+        return new GeometricCanvasSavedState(copies, nextFreePolyShapeID);
+    }
+
+    /**
+     * Takes cheap copy of all shapes in painting order, including shapes of document opened out-of-core.
+     * Background operations can read it while shapes on canvas keep being edited.
+     * @return shapes in painting order
+     * @see #snapshot()
+     * @see PagedDocument#snapshot(List, List)
+     */
+    private Collection<PolyShape> snapshotShapes() {
+        flushInput();
+        if(pagedDocument == null) {
+            return snapshot().polyShapes;
+        }
+        List<PolyShape> below = new ArrayList<>();
+        List<PolyShape> above = new ArrayList<>();
+        for(PolyShape pls : polyShapes) {
+            (pls.getZOrder() < 0 ? below : above).add(pls.snapshot());
+        }
+        return pagedDocument.snapshot(below, above);
+    }
+
+    /**
+     * Runs work writing file, removing partially written file if work fails or is cancelled
+     * @param path file written by work
+     * @param work work to run
+     * @param progress progress listener passed to work
+     * @throws IOException
      */
-    public void exportToPNG(String path)
-    {
-        BufferedImage bImg = new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D cg = bImg.createGraphics();
-        this.hideMousePosAndCanvasDimension = true;
-        this.paintAll(cg);
+    private static void deleteOnFailure(String path, BackgroundOperation.Work work, ProgressListener progress) throws IOException {
+        boolean done = false;
         try {
-            ImageIO.write(bImg, "png", new File(path));
-        } catch (IOException e) {
-            e.printStackTrace();
+            work.run(progress);
+            done = true;
+        } finally {
+            if(!done) {
+                new File(path).delete();
+            }
         }
-        this.hideMousePosAndCanvasDimension = false;
     }
 
     /**
-     * Serializes canvas state and saves it to specified file
+     * Prepares export of shapes to PNG image of canvas size multiplied by scale factor.<br>
+     * Shapes are snapshotted right away, returned work renders them in tiles and streams them to file,
+     * so memory use does not grow with image size. Active shape is not highlighted and mouse position is not shown.
+     * @param path file path to export to
+     * @param scale scale factor, eg. 8 exports image eight times wider and higher than canvas
+     * @return work to be run in background
+     * @see TiledImageExporter
+     * @see BackgroundOperation
+     */
+    public BackgroundOperation.Work prepareExportToPNG(String path, double scale) {
+        Collection<PolyShape> shapes = snapshotShapes();
+        int width = getWidth();
+        int height = getHeight();
+        Color background = getBackground();
+        return progress -> deleteOnFailure(path, p -> {
+            TiledImageExporter exporter = new TiledImageExporter(shapes, width, height, scale, background);
+            try(FileOutputStream out = new FileOutputStream(path)) {
+                exporter.export(out, p);
+            }
+            System.out.println("[GeometricCanvas] Exported " + exporter.getWidth() + "x" + exporter.getHeight() + " image to file " + path);
+        }, progress);
+    }
+
+    /**
+     * Prepares export of shapes in painting order to vector image of canvas size.
+     * Shapes are snapshotted right away, returned work streams their outlines to file.
+     * @param path file path to export to
+     * @param format SVG or PDF
+     * @return work to be run in background
+     * @see VectorExporter
+     * @see BackgroundOperation
+     */
+    public BackgroundOperation.Work prepareExportToVector(String path, VectorExporter.Format format) {
+        Collection<PolyShape> shapes = snapshotShapes();
+        int width = getWidth();
+        int height = getHeight();
+        Color background = getBackground();
+        return progress -> deleteOnFailure(path, p -> {
+            // stream is closed even if exporter fails to write the header
+            try(FileOutputStream out = new FileOutputStream(path);
+                VectorExporter exporter = new VectorExporter(out, format, width, height, background)) {
+                int written = 0;
+                for(PolyShape pls : shapes) {
+                    exporter.writeShape(pls);
+                    if(++written % DocumentFormat.PROGRESS_STEP == 0) {
+                        p.progress(written, shapes.size());
+                    }
+                }
+            }
+            System.out.println("[GeometricCanvas] Exported " + format + " to file " + path);
+        }, progress);
+    }
+
+    /**
+     * Prepares saving of canvas state to specified file in {@link DocumentFormat}.<br>
+     * If the file is the document that was loaded or saved last, returned work only appends edits made since then
+     * to its {@link EditJournal}. Once journal grows too big, work goes on to fold it into the document.
+     * Otherwise shapes are snapshotted right away and returned work writes them whole and starts new journal.
      * @param path path to save to
+     * @return work to be run in background
+     * @see DocumentFormat
+     * @see EditJournal
+     * @see BackgroundOperation
+     */
+    public BackgroundOperation.Work prepareSaveStateToFile(String path) {
+        flushInput();
+        EditJournal journal = this.journal;
+        if(journal.canAppendTo(path)) {
+            List<EditRecord> records = journal.takePending();
+            long generation = journal.getGeneration();
+            if(!journal.needsCompaction()) {
+                return progress -> {
+                    journal.append(path, generation, records);
+                    System.out.println("[GeometricCanvas] Appended " + records.size() + " edits to journal of " + path);
+                };
+            }
+            // edits are made durable first, document is rewritten after
+            Collection<PolyShape> shapes = snapshotShapes();
+            long nextFreeID = nextFreePolyShapeID;
+            long compacted = DocumentFormat.newGeneration();
+            bindJournal(path, compacted);
+            return progress -> rewriteOnFailure(journal, p -> {
+                journal.append(path, generation, records);
+                DocumentFormat.save(shapes, nextFreeID, path, compacted, p);
+                journal.reset(path, compacted);
+                System.out.println("[GeometricCanvas] Folded journal into file " + path);
+            }, progress);
+        }
+
+        Collection<PolyShape> shapes = snapshotShapes();
+        long nextFreeID = nextFreePolyShapeID;
+        long generation = DocumentFormat.newGeneration();
+        bindJournal(path, generation);
+        return progress -> rewriteOnFailure(journal, p -> {
+            DocumentFormat.save(shapes, nextFreeID, path, generation, p);
+            journal.reset(path, generation);
+            System.out.println("[GeometricCanvas] Successfully saved state to file " + path);
+        }, progress);
+    }
+
+    /**
+     * Runs work writing document, making sure next save writes document whole if work fails or is cancelled
+     * @param journal journal of document
+     * @param work work to run
+     * @param progress progress listener passed to work
      * @throws IOException
      */
-    public void saveStateToFile(String path) throws IOException {
-        FileOutputStream fileOut = new FileOutputStream(path);
-        ObjectOutputStream oos = new ObjectOutputStream(fileOut);
-        oos.writeObject(getSaveState());
-        oos.close();
-        fileOut.close();
-        System.out.println("[GeometricCanvas] Successfully saved state to file " + path);
+    private static void rewriteOnFailure(EditJournal journal, BackgroundOperation.Work work, ProgressListener progress) throws IOException {
+        boolean done = false;
+        try {
+            work.run(progress);
+            done = true;
+        } finally {
+            if(!done) {
+                journal.markBroken();
+            }
+        }
+    }
+
+    /**
+     * Binds journal to document that is about to be written whole.
+     * Shapes with no vertices are not written to document, so they are recorded in journal again.
+     * @param path document path
+     * @param generation generation of document
+     */
+    private void bindJournal(String path, long generation) {
+        journal.bind(path, generation, EditJournal.HEADER_SIZE);
+        for(PolyShape pls : polyShapes) {
+            if(pls.getCoordinatesSize() == 0) {
+                journal.record(EditRecord.addShape(pls));
+            }
+        }
     }
 
     /**
-     * Loads serialized state from file to canvas and repaints from that data
+     * Starts loading state from file in background. Canvas is cleared right away and shapes show up in batches
+     * as they are read, they can't be edited until loading finishes.
+     * Files saved by first release (serialized {@link GeometricCanvasSavedState}) are imported.
      * @param path path to load from
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    public void loadStateFromFile(String path) throws IOException, ClassNotFoundException {
-        FileInputStream fileIn = new FileInputStream(path);
-        ObjectInputStream ois = new ObjectInputStream(fileIn);
-        GeometricCanvasSavedState gcss = (GeometricCanvasSavedState)ois.readObject();
-        polyShapes = gcss.polyShapes;
-        nextFreePolyShapeID = gcss.nextFreePolyShapeID;
+     * @see DocumentLoader
+     * @see DocumentFormat
+     * @see LegacyDocumentImporter
+     */
+    public void loadStateFromFile(String path) {
+        discardInput();
+        cancelLoading();
+        closePagedDocument();
+        polyShapes = new ZOrderList();
+        actualPolyShape = null;
+        nextFreePolyShapeID = 0;
+        journal = new EditJournal();
+        history.clear();
+        rebuildShapeIndex();
+        layerCache.invalidate();
+        shapesChanged();
+        view = Viewport.IDENTITY;
+        repaint();
+        loader = new DocumentLoader(outerWindow, this, path);
+        loader.start();
+    }
+
+    /**
+     * Appends shapes read by {@link DocumentLoader} on top of those loaded before and repaints
+     * @param batch loaded shapes in painting order, their geometry is already built
+     */
+    void appendLoadedShapes(List<PolyShape> batch) {
+        for(PolyShape pls : batch) {
+            polyShapes.addLast(pls);
+            shapeIndex.update(pls);
+            nextFreePolyShapeID = Math.max(nextFreePolyShapeID, pls.getID() + 1);
+        }
+        shapesChanged();
         repaint();
+    }
+
+    /**
+     * Starts showing document that {@link DocumentLoader} opened out-of-core
+     * @param opening loader that opened document, document is closed if loading was restarted meanwhile
+     * @param document opened document, its pages are added as they are scanned
+     */
+    void attachPagedDocument(DocumentLoader opening, PagedDocument document) {
+        if(opening != loader) {
+            BackgroundOperation.execute(() -> closeQuietly(document));
+            return;
+        }
+        pagedDocument = document;
+        polyShapes.setFloor(document.getShapeCount());
+    }
+
+    /**
+     * Adds pages scanned by {@link DocumentLoader} to document opened out-of-core and repaints
+     * @param pages scanned pages in painting order
+     */
+    void appendLoadedPages(List<PagedDocument.Page> pages) {
+        pagedDocument.addPages(pages);
+        polyShapes.setFloor(pagedDocument.getShapeCount());
+        repaint();
+    }
+
+    /**
+     * Stops showing document opened out-of-core. Document is closed after background operations
+     * started before, they may still be reading its snapshot.
+     */
+    private void closePagedDocument() {
+        if(pagedDocument != null) {
+            PagedDocument document = pagedDocument;
+            pagedDocument = null;
+            BackgroundOperation.execute(() -> closeQuietly(document));
+        }
+    }
+
+    /**
+     * Closes document opened out-of-core, logging failure
+     * @param document document to close
+     */
+    private static void closeQuietly(PagedDocument document) {
+        try {
+            document.close();
+        } catch (IOException e) {
+            System.out.println("[GeometricCanvas] Could not close document: " + e);
+        }
+    }
+
+    /**
+     * Applies journal of document opened out-of-core. Shapes that are only changed stay at their place in document,
+     * shapes that were moved to front or bottom leave document for canvas and so do new shapes.
+     * @param records edits read from journal
+     * @param journalled shapes of document changed by journal in painting order, with their document z-order
+     */
+    private void replayPaged(List<EditRecord> records, List<PolyShape> journalled) {
+        LinkedList<PolyShape> shapes = new LinkedList<>(journalled);
+        nextFreePolyShapeID = Math.max(nextFreePolyShapeID, EditJournal.replay(shapes, records));
+
+        HashMap<Long, Boolean> reordered = new HashMap<>();    // shape ID -> true if it was last moved to front
+        for(EditRecord record : records) {
+            if(record.op == EditRecord.REORDER) {
+                reordered.put(record.id, record.value != 0);
+            }
+        }
+        Set<PolyShape> documentShapes = Collections.newSetFromMap(new IdentityHashMap<>());
+        documentShapes.addAll(journalled);
+        Set<PolyShape> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(shapes);
+        for(PolyShape pls : journalled) {
+            if(!kept.contains(pls)) {
+                pagedDocument.release(pls);     // deleted
+            }
+        }
+
+        List<PolyShape> below = new ArrayList<>();
+        for(PolyShape pls : shapes) {
+            Boolean toFront = reordered.get(pls.getID());
+            if(documentShapes.contains(pls)) {
+                if(toFront == null) {
+                    pagedDocument.checkOut(pls);
+                    continue;
+                }
+                pagedDocument.release(pls);
+            }
+            if(toFront != null && !toFront) {
+                below.add(pls);
+            } else {
+                polyShapes.addLast(pls);
+                shapeIndex.update(pls);
+            }
+        }
+        for(int i = below.size() - 1; i >= 0; i--) {
+            PolyShape pls = below.get(i);
+            polyShapes.addFirst(pls);
+            shapeIndex.update(pls);
+        }
+    }
+
+    /**
+     * Ends loading started by {@link #loadStateFromFile(String)}, shapes can be edited again.
+     * Edits from document's journal are applied and further edits are journalled against the document.
+     * @param finished loader that finished, ignored if loading was restarted meanwhile
+     * @param nextFreePolyShapeID next free ID stored in document
+     * @param path document path
+     * @param generation generation of document, 0 if it has none and has to be written whole on next save
+     * @param saved edits read from journal of document or null
+     */
+    void finishLoading(DocumentLoader finished, long nextFreePolyShapeID, String path, long generation, EditJournal.Contents saved) {
+        if(finished != loader) {
+            return;
+        }
+        loader = null;
+        this.nextFreePolyShapeID = Math.max(this.nextFreePolyShapeID, nextFreePolyShapeID);
+        if(pagedDocument != null) {
+            polyShapes.setFloor(pagedDocument.getShapeCount());
+            if(saved != null) {
+                replayPaged(saved.records, finished.getJournalledShapes());
+            }
+        } else if(saved != null && !saved.records.isEmpty()) {
+            this.nextFreePolyShapeID = Math.max(this.nextFreePolyShapeID, EditJournal.replay(polyShapes, saved.records));
+            rebuildShapeIndex();
+            layerCache.invalidate();
+        }
+        if(generation != 0 && saved != null) {
+            journal.bind(path, generation, saved.validSize);
+        }
+        shapesChanged();   // journal was replayed
         addNewPolyShape(outerWindow.getActiveMode());
-        ois.close();
-        fileIn.close();
-        System.out.println("[GeometricCanvas] Successfully loaded state from file " + path);
+        repaint();
+        System.out.println("[GeometricCanvas] Successfully loaded state from file"
+                + " (" + polyShapes.size() + " shapes, ~" + estimateHeapFootprint() / 1024 + " KiB of heap)");
+        if(pagedDocument != null) {
+            System.out.println("[GeometricCanvas] Document opened out-of-core with " + pagedDocument.getShapeCount()
+                    + " shapes: " + pagedDocument.getStatistics());
+        }
+    }
+
+    /**
+     * Stops loading document, shapes loaded so far stay on canvas
+     */
+    private void cancelLoading() {
+        if(loader != null) {
+            loader.cancel(false);
+            loader = null;
+            outerWindow.setLoadProgress(-1);
+        }
+    }
+
+    /**
+     * Returns current zoom and pan of canvas
+     * @return viewport
+     */
+    public Viewport getViewport() {
+        return view;
+    }
+
+    /**
+     * Zooms view in or out keeping the centre of canvas in place
+     * @param levels number of zoom levels to zoom in, negative to zoom out
+     * @see Viewport
+     */
+    public void zoom(int levels) {
+        setViewport(view.zoomedAt(new Point2D.Double(getWidth() / 2.0, getHeight() / 2.0), levels));
+    }
+
+    /**
+     * Shows the drawing at its size with its origin in top left corner of canvas
+     */
+    public void resetView() {
+        setViewport(Viewport.IDENTITY);
+    }
+
+    /**
+     * Changes zoom and pan of canvas and repaints it
+     * @param viewport new viewport
+     */
+    private void setViewport(Viewport viewport) {
+        if(viewport.equals(view)) {
+            return;
+        }
+        view = viewport;
+        layerCache.invalidate();
+        repaint();
+    }
+
+    /**
+     * Returns number of shapes skipped by latest painting because they lie outside of painted area,
+     * eg. outside of the small area repainted after a tooltip disappears. Used for diagnostics.
+     * @return number of skipped shapes
+     */
+    public int getSkippedShapeCount() {
+        if(pagedDocument == null && SceneRenderer.ENABLED) {
+            return sceneRenderer.getSkippedShapeCount();
+        }
+        return skippedShapeCount;
+    }
+
+    /**
+     * Checks whether document is still being loaded
+     * @return true if shapes are still being loaded
+     */
+    public boolean isLoading() {
+        return loader != null;
+    }
+
+    /**
+     * Estimates how many bytes of heap all shapes on canvas occupy
+     * @return approximate heap footprint in bytes
+     * @see PolyShape#estimateHeapFootprint()
+     */
+    public long estimateHeapFootprint() {
+        long bytes = 0;
+        for(PolyShape pls : polyShapes) {
+            bytes += pls.estimateHeapFootprint();
+        }
+        if(pagedDocument != null) {
+            bytes += pagedDocument.estimateHeapFootprint();
+        }
+        return bytes;
+    }
+
+    /**
+     * Indexes all shapes from scratch
+     * @see ShapeIndex
+     */
+    private void rebuildShapeIndex() {
+        shapeIndex.clear();
+        for(PolyShape pls : polyShapes) {
+            shapeIndex.update(pls);
+        }
     }
 
     /**
@@ -118,35 +622,42 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
     }
 
     /**
-     * Marks previous actual shape inactive and creates new {@link PolyShape} with certain {@link com.geocreator.MainWindow.Mode}
-     * and adds it to LinkedList as last element (front layer) and sets it as active.
+     * Finishes and marks previous actual shape inactive and creates new {@link PolyShape} with certain {@link com.geocreator.MainWindow.Mode}
+     * and adds it to {@link ZOrderList} as last element (front layer) and sets it as active.
      * @param md mode in which {@link PolyShape} should be created
      * @see PolyShape
      * @see com.geocreator.MainWindow.Mode
-     * @see LinkedList
+     * @see ZOrderList
      */
     public void addNewPolyShape(MainWindow.Mode md) {
+        if(isLoading()) {
+            return;     // added when loading finishes, its ID is not known before
+        }
+        flushInput();
         if(actualPolyShape != null) {
+            actualPolyShape.finishConstruction();
             actualPolyShape.setActive(false);   // set old one to inactive
         }
         actualPolyShape = new PolyShape(nextFreePolyShapeID, md);
         actualPolyShape.setActive(true);    // set new one to active
         polyShapes.addLast(actualPolyShape);
+        journal.record(EditRecord.addShape(actualPolyShape));
+        layerCache.invalidate();
+        shapesChanged();
         nextFreePolyShapeID++;
         System.out.println("[GeometricCanvas] Added new PolyShape");
     }
 
     /**
-     * Removes specified {@link PolyShape} object from {@link LinkedList}
+     * Removes specified {@link PolyShape} object from {@link ZOrderList}
      * and sets active to none (null). Repaints canvas after.
      * @param polyShape
      */
     public void removePolyShape(PolyShape polyShape) {
+        flushInput();
         if(polyShape != null) {
-            polyShapes.remove(polyShape);
-            actualPolyShape = null;
-            repaint();
-            System.out.println("[GeometricCanvas] Removed PolyShape");
+            history.record(new UndoHistory.Delete(polyShape, polyShapes.getPrevious(polyShape), polyShape.getZOrder()));
+            applyRemove(polyShape);
         }
     }
 
@@ -155,11 +666,10 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
      * @param polyShape specified object
      */
     public void movePolyShapeToFront(PolyShape polyShape) {
+        flushInput();
         if(polyShape != null) {
-            polyShapes.remove(polyShape);
-            polyShapes.addLast(polyShape);
-            repaint();
-            System.out.println("[GeometricCanvas] PolyShape moved to top");
+            history.record(new UndoHistory.Reorder(polyShape, true, polyShapes.getPrevious(polyShape), polyShape.getZOrder()));
+            applyReorder(polyShape, true);
         }
     }
 
@@ -168,11 +678,190 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
      * @param polyShape specified object
      */
     public void movePolyShapeToBottom(PolyShape polyShape) {
+        flushInput();
         if(polyShape != null) {
-            polyShapes.remove(polyShape);
+            history.record(new UndoHistory.Reorder(polyShape, false, polyShapes.getPrevious(polyShape), polyShape.getZOrder()));
+            applyReorder(polyShape, false);
+        }
+    }
+
+    /**
+     * Changes background color of specified {@link PolyShape} and repaints it
+     * @param polyShape specified object
+     * @param color new background color
+     */
+    public void setPolyShapeColor(PolyShape polyShape, Color color) {
+        flushInput();
+        if(polyShape != null && !color.equals(polyShape.getBackGroundColor())) {
+            history.record(new UndoHistory.Recolor(polyShape, polyShape.getBackGroundColor(), color));
+            applyColor(polyShape, color);
+        }
+    }
+
+    /**
+     * Reverts last change of shapes
+     * @see UndoHistory
+     */
+    public void undo() {
+        if(isLoading()) {
+            return;
+        }
+        flushInput();
+        if(history.undo(this)) {
+            System.out.println("[GeometricCanvas] Undone last change (" + history.getSize() / 1024 + " KiB of history)");
+        }
+    }
+
+    /**
+     * Repeats last undone change of shapes
+     * @see UndoHistory
+     */
+    public void redo() {
+        if(isLoading()) {
+            return;
+        }
+        flushInput();
+        if(history.redo(this)) {
+            System.out.println("[GeometricCanvas] Redone last undone change");
+        }
+    }
+
+    /**
+     * Marks shapes changed, so next paint hands new version of scene over to {@link SceneRenderer}.
+     * Paints that don't follow a change (eg. of mouse position text) only blit the latest frame.
+     */
+    private void shapesChanged() {
+        shapesVersion++;
+    }
+
+    /**
+     * Marks rendering of other shapes outdated if specified shape is one of them
+     * @param pls changed shape
+     */
+    private void invalidateLayerOf(PolyShape pls) {
+        shapesChanged();
+        if(pls != actualPolyShape) {
+            layerCache.invalidate();
+        }
+    }
+
+    /**
+     * Moves shape, also when change is undone or redone
+     * @param pls shape
+     * @param x distance as passed to {@link PolyShape#move(double, double)}
+     * @param y distance
+     */
+    void applyMove(PolyShape pls, double x, double y) {
+        Rectangle before = damagedArea(pls);
+        pls.move(x, y);
+        shapeIndex.update(pls);
+        journal.record(EditRecord.move(pls, x, y));
+        invalidateLayerOf(pls);
+        repaintDamage(before, pls);
+    }
+
+    /**
+     * Sets scale factor of shape when change is undone or redone
+     * @param pls shape
+     * @param factor scale factor
+     */
+    void applyScale(PolyShape pls, double factor) {
+        Rectangle before = damagedArea(pls);
+        pls.setScaleTransformFactor(factor);
+        shapeIndex.update(pls);
+        journal.record(EditRecord.scale(pls));
+        invalidateLayerOf(pls);
+        repaintDamage(before, pls);
+    }
+
+    /**
+     * Sets rotate index of shape when change is undone or redone
+     * @param pls shape
+     * @param index rotate index
+     */
+    void applyRotate(PolyShape pls, int index) {
+        Rectangle before = damagedArea(pls);
+        pls.setRotateTransformIndex(index);
+        shapeIndex.update(pls);
+        journal.record(EditRecord.rotate(pls));
+        invalidateLayerOf(pls);
+        repaintDamage(before, pls);
+    }
+
+    /**
+     * Sets background color of shape, also when change is undone or redone
+     * @param pls shape
+     * @param color background color
+     */
+    void applyColor(PolyShape pls, Color color) {
+        pls.setBackgroundColor(color);
+        journal.record(EditRecord.recolor(pls));
+        invalidateLayerOf(pls);
+        repaintDamage(null, pls);
+    }
+
+    /**
+     * Moves shape to front or bottom layer, also when change is redone
+     * @param polyShape shape
+     * @param toFront true to move it to front, false to bottom
+     */
+    void applyReorder(PolyShape polyShape, boolean toFront) {
+        polyShapes.remove(polyShape);
+        if(toFront) {
+            polyShapes.addLast(polyShape);
+        } else {
             polyShapes.addFirst(polyShape);
-            repaint();
-            System.out.println("[GeometricCanvas] PolyShape moved to bottom");
+        }
+        journal.record(EditRecord.reorder(polyShape, toFront));
+        layerCache.invalidate();
+        shapesChanged();
+        repaint();
+        System.out.println("[GeometricCanvas] PolyShape moved to " + (toFront ? "top" : "bottom"));
+    }
+
+    /**
+     * Removes shape, also when change is redone
+     * @param polyShape shape
+     */
+    void applyRemove(PolyShape polyShape) {
+        polyShapes.remove(polyShape);
+        shapeIndex.remove(polyShape);
+        journal.record(EditRecord.delete(polyShape));
+        layerCache.invalidate();
+        shapesChanged();
+        if(polyShape == actualPolyShape) {
+            actualPolyShape = null;
+        }
+        polyShape.setActive(false);
+        repaint();
+        System.out.println("[GeometricCanvas] Removed PolyShape");
+    }
+
+    /**
+     * Puts shape back right above the shape it was painted over, when its reorder or delete is undone
+     * @param polyShape shape, on canvas or deleted
+     * @param predecessor shape it was painted over, null to put it at the bottom
+     * @param zOrder z-order it had there, tells whether it was under document opened out-of-core
+     */
+    void restorePolyShape(PolyShape polyShape, PolyShape predecessor, long zOrder) {
+        polyShapes.remove(polyShape);
+        polyShapes.addAfter(predecessor, polyShape, zOrder < 0);
+        shapeIndex.update(polyShape);
+        journal.requireRewrite();   // journal can only move shapes to front or bottom
+        layerCache.invalidate();
+        shapesChanged();
+        repaint();
+    }
+
+    /**
+     * Finishes creating actual {@link PolyShape} if it is a polygon still under construction
+     * @see PolyShape#finishConstruction()
+     */
+    public void finishActualPolyShape() {
+        flushInput();
+        if(actualPolyShape != null) {
+            actualPolyShape.finishConstruction();
+            shapesChanged();
         }
     }
 
@@ -196,6 +885,76 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
         addMouseMotionListener(this);
         addMouseWheelListener(this);
         addKeyListener(this);
+        inputTimer.setRepeats(false);
+    }
+
+    /**
+     * Returns shape drag and wheel input is gathered for, applying input gathered for another shape first
+     * @param pls shape that receives input
+     * @return the same shape
+     */
+    private PolyShape gatherInputFor(PolyShape pls) {
+        if(pendingShape != pls) {
+            flushInput();
+            pendingShape = pls;
+            pendingMoveX = 0;
+            pendingMoveY = 0;
+            pendingScaleFactor = pls.getScaleTransformFactor();
+            pendingRotateIndex = pls.getRotateTransformIndex();
+        }
+        return pls;
+    }
+
+    /**
+     * Applies gathered input on next frame, or right away if input is not gathered
+     */
+    private void scheduleInput() {
+        if(INPUT_FPS <= 0) {
+            flushInput();
+        } else if(!inputTimer.isRunning()) {
+            inputTimer.start();
+        }
+    }
+
+    /**
+     * Applies drag and wheel input gathered since last frame to its shape at once - summed drag distance,
+     * scale factor and rotate index after all wheel notches. Shape, its index entry and the journal are updated
+     * once and one undo record per kind of change is made. Repaints area covered by shape before and after.
+     */
+    private void flushInput() {
+        inputTimer.stop();
+        PolyShape pls = pendingShape;
+        if(pls == null) {
+            return;
+        }
+        pendingShape = null;
+        Rectangle before = damagedArea(pls);
+        if(pendingMoveX != 0 || pendingMoveY != 0) {
+            history.record(new UndoHistory.Move(pls, pendingMoveX, pendingMoveY));
+            pls.move(pendingMoveX, pendingMoveY);
+            journal.record(EditRecord.move(pls, pendingMoveX, pendingMoveY));
+        }
+        if(pendingScaleFactor != pls.getScaleTransformFactor()) {
+            history.record(new UndoHistory.Scale(pls, pls.getScaleTransformFactor(), pendingScaleFactor));
+            pls.setScaleTransformFactor(pendingScaleFactor);
+            journal.record(EditRecord.scale(pls));
+        }
+        if(pendingRotateIndex != pls.getRotateTransformIndex()) {
+            history.record(new UndoHistory.Rotate(pls, pls.getRotateTransformIndex(), pendingRotateIndex));
+            pls.setRotateTransformIndex(pendingRotateIndex);
+            journal.record(EditRecord.rotate(pls));
+        }
+        shapeIndex.update(pls);
+        invalidateLayerOf(pls);
+        repaintDamage(before, pls);
+    }
+
+    /**
+     * Drops gathered input, used when shapes are thrown away
+     */
+    private void discardInput() {
+        inputTimer.stop();
+        pendingShape = null;
     }
 
     /**
@@ -204,50 +963,95 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
      * Repaints after.
      */
     public void clearCanvas() {
+        discardInput();
+        cancelLoading();
+        closePagedDocument();
         if( getLastMode() == null ) {
             setLastMode(MainWindow.Mode.CREATING_POLYGONS);
         }
 
-        polyShapes = new LinkedList<>();
+        polyShapes = new ZOrderList();
+        shapeIndex.clear();
+        layerCache.invalidate();
+        shapesChanged();
+        view = Viewport.IDENTITY;
         nextFreePolyShapeID = 0;
+        journal = new EditJournal();
+        history.clear();
         addNewPolyShape(outerWindow.getActiveMode());
         repaint();
     }
 
     /**
-     * Draws all of the {@link PolyShape} objects stored in {@link LinkedList}
+     * Draws all of the {@link PolyShape} objects stored in {@link ZOrderList}
      * based on their transform factors and color and {@link com.geocreator.MainWindow.Mode}.
+     * Current version of scene is handed over to {@link SceneRenderer} and its latest finished frame is blitted.
+     * When render thread is turned off, shapes are painted right here - when there is an actual shape,
+     * all other shapes are taken from {@link LayerCache} and only actual shape is painted from scratch.
+     * Document opened out-of-core is always painted here, its pages are only read on Event Dispatch Thread.
+     * Shapes are shown through the zoom and pan of {@link Viewport}.
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D)g;
+        boolean editing = outerWindow.getActiveMode() == MainWindow.Mode.EDITING;
+        AffineTransform deviceTransform = g2d.getTransform();
 
-        for(int i = 0; i < polyShapes.size(); i++) {
-            if(polyShapes.get(i).isDrawable()) {
-                //set background color
-                g2d.setPaint(polyShapes.get(i).getBackGroundColor());
-                g2d.fill(polyShapes.get(i).getShape());
-
-                // set border lines color to bold if its active
-                if(outerWindow.getActiveMode() == MainWindow.Mode.EDITING && polyShapes.get(i).isActive()) {
-                    g2d.setStroke(new BasicStroke(5, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                    g2d.setColor(new Color(0,196,0));
-                } else {
-                    g2d.setColor(new Color(0));
+        if(pagedDocument != null) {
+            g2d.transform(view.getTransform());
+            // shapes outside of painted area are skipped, partial repaints cost as much as is visible
+            Rectangle clip = g2d.getClipBounds();
+            // shapes of document are paged in only for painted area
+            skippedShapeCount = 0;
+            for(PolyShape pls : polyShapes) {
+                if(pls.getZOrder() < 0 && !ShapeRenderer.paintShape(g2d, pls, editing && pls.isActive(), clip)) {
+                    skippedShapeCount++;
+                }
+            }
+            skippedShapeCount += pagedDocument.paint(g2d, clip);
+            for(PolyShape pls : polyShapes) {
+                if(pls.getZOrder() >= 0 && !ShapeRenderer.paintShape(g2d, pls, editing && pls.isActive(), clip)) {
+                    skippedShapeCount++;
+                }
+            }
+        } else if(SceneRenderer.ENABLED) {
+            boolean highlightLive = editing && actualPolyShape != null && actualPolyShape.isActive();
+            // taking a version costs a reference per shape, partial repaints (eg. of mouse position) just blit last frame
+            if(publishedVersion != shapesVersion || !published.shows(highlightLive, getBackground(), getWidth(), getHeight(),
+                    deviceTransform.getScaleX(), deviceTransform.getScaleY(), view)) {
+                published = new Scene(polyShapes, actualPolyShape, highlightLive,
+                        getBackground(), getWidth(), getHeight(), deviceTransform.getScaleX(), deviceTransform.getScaleY(), view);
+                publishedVersion = shapesVersion;
+                sceneRenderer.publish(published);
+            }
+            sceneRenderer.paint(g2d);
+        } else if(layerCacheEnabled && actualPolyShape != null) {
+            int deviceWidth = (int)Math.ceil(getWidth() * deviceTransform.getScaleX());
+            int deviceHeight = (int)Math.ceil(getHeight() * deviceTransform.getScaleY());
+            if(!layerCache.isValidFor(actualPolyShape, deviceWidth, deviceHeight)) {
+                AffineTransform transform = AffineTransform.getScaleInstance(deviceTransform.getScaleX(), deviceTransform.getScaleY());
+                transform.concatenate(view.getTransform());
+                skippedShapeCount = layerCache.rebuild(polyShapes, actualPolyShape, getBackground(), transform, deviceWidth, deviceHeight);
+            }
+            layerCache.paint(g2d, actualPolyShape, editing && actualPolyShape.isActive(), getWidth(), getHeight(), view.getTransform());
+        } else {
+            g2d.transform(view.getTransform());
+            Rectangle clip = g2d.getClipBounds();
+            skippedShapeCount = 0;
+            for(PolyShape pls : polyShapes) {
+                if(!ShapeRenderer.paintShape(g2d, pls, editing && pls.isActive(), clip)) {
+                    skippedShapeCount++;
                 }
-                g2d.draw(polyShapes.get(i).getShape());
-                g2d.setStroke(new BasicStroke());
             }
         }
+        g2d.setTransform(deviceTransform);
 
         g2d.setColor(new Color(0));
 
-        // Hide params before exporting to PNG file
-        if(!hideMousePosAndCanvasDimension) {
-            g2d.drawString("PosX: " + (int)mousePos.getX() + "px | PosY: " + (int)mousePos.getY() + "px", 5, (float)this.getSize().getHeight()-5);
-            g2d.drawString("Canvas: " + (int)this.getSize().getWidth() + " x " + (int)this.getSize().getHeight(), (float)this.getSize().getWidth() - 135, (float)this.getSize().getHeight()-5);
-        }
+        // exports render snapshots on their own, these are only ever shown on screen
+        g2d.drawString(mousePosText(), 5, (float)this.getSize().getHeight()-5);
+        g2d.drawString("Canvas: " + (int)this.getSize().getWidth() + " x " + (int)this.getSize().getHeight(), (float)this.getSize().getWidth() - 135, (float)this.getSize().getHeight()-5);
     }
 
     /**
@@ -265,24 +1069,45 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
     public void mousePressed(MouseEvent e) {
         last_x = e.getX();
         last_y = e.getY();
+        if(e.getButton() == MouseEvent.BUTTON2) {
+            // view can be panned even while document is loading
+            panning = true;
+            return;
+        }
+        if(isLoading()) {
+            return;
+        }
+        flushInput();
+        history.seal();     // new gesture starts
+        // point of the drawing under mouse
+        Point2D pos = view.toWorld(e.getPoint());
 
         if(e.getButton() == MouseEvent.BUTTON1) {
             if (outerWindow.getActiveMode() == MainWindow.Mode.CREATING_POLYGONS) {
-                actualPolyShape.addPointCoord(e.getX(), e.getY());
+                actualPolyShape.addPointCoord(pos.getX(), pos.getY());
+                journal.record(EditRecord.addPoint(actualPolyShape, pos.getX(), pos.getY()));
+                shapeIndex.update(actualPolyShape);
+                shapesChanged();
             }
 
             if (outerWindow.getActiveMode() == MainWindow.Mode.CREATING_CIRCLES) {
                 if (actualPolyShape.getCoordinatesSize() >= 2) {
                     addNewPolyShape(MainWindow.Mode.CREATING_CIRCLES);
                 }
-                actualPolyShape.addPointCoord(e.getX(), e.getY());
+                actualPolyShape.addPointCoord(pos.getX(), pos.getY());
+                journal.record(EditRecord.addPoint(actualPolyShape, pos.getX(), pos.getY()));
+                shapeIndex.update(actualPolyShape);
+                shapesChanged();
             }
 
             if (outerWindow.getActiveMode() == MainWindow.Mode.CREATING_RECTANGLES) {
                 if (actualPolyShape.getCoordinatesSize() >= 2) {
                     addNewPolyShape(MainWindow.Mode.CREATING_RECTANGLES);
                 }
-                actualPolyShape.addPointCoord(e.getX(), e.getY());
+                actualPolyShape.addPointCoord(pos.getX(), pos.getY());
+                journal.record(EditRecord.addPoint(actualPolyShape, pos.getX(), pos.getY()));
+                shapeIndex.update(actualPolyShape);
+                shapesChanged();
             }
         }
 
@@ -290,23 +1115,39 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
             if(actualPolyShape != null) {
                 actualPolyShape.setActive(false);
                 actualPolyShape = null;
+                shapesChanged();
             }
-            Point point = e.getPoint();
-            // Start from last because it's painted on stack
-            for (int i = polyShapes.size()-1; i >= 0; i--) {
-                PolyShape pls = polyShapes.get(i);
-                if(pls.isDrawable()) {
-                    if(pls.getShape().contains(point)) {
-                        if(e.getButton() == MouseEvent.BUTTON1) {
-                            pressIn = true;
-                        }
-                        actualPolyShape = pls;
-                        actualPolyShape.setActive(true);
-                        polyShapes.remove(pls);
-                        polyShapes.addLast(pls); // move current shape to the top
-                        break;
-                    }
+            // Index knows which shape is painted on top of the stack at that point
+            PolyShape pls = shapeIndex.topmostAt(pos);
+            boolean released = false;   // shape was just added on top of canvas
+            if(pagedDocument != null) {
+                // shape of document opened out-of-core leaves it for canvas once it is picked
+                PolyShape documentShape = pagedDocument.topmostAt(pos);
+                if(documentShape != null && (pls == null || documentShape.getZOrder() > pls.getZOrder())) {
+                    pagedDocument.release(documentShape);
+                    polyShapes.addLast(documentShape);
+                    shapeIndex.update(documentShape);
+                    pls = documentShape;
+                    released = true;
+                }
+            }
+            if(pls != null) {
+                if(e.getButton() == MouseEvent.BUTTON1) {
+                    pressIn = true;
+                }
+                actualPolyShape = pls;
+                actualPolyShape.setActive(true);
+                if(released) {
+                    // shape left the document for the top of canvas
+                    journal.record(EditRecord.reorder(pls, true));
+                } else if(polyShapes.getLast() != pls) {
+                    history.record(new UndoHistory.Reorder(pls, true, polyShapes.getPrevious(pls), pls.getZOrder()));
+                    polyShapes.remove(pls);
+                    polyShapes.addLast(pls); // move current shape to the top
+                    journal.record(EditRecord.reorder(pls, true));
                 }
+                layerCache.invalidate();
+                shapesChanged();
             }
         }
         repaint();
@@ -315,54 +1156,79 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
     /**
      * While holding left mouse button and being in EDITING {@link com.geocreator.MainWindow.Mode}
      * updates location of actual shape if mouse is over that shape.
+     * Drag distance is summed and applied once per frame, see {@link #INPUT_FPS}.
+     * Repaints only area covered by moved shape before and after move.
+     * While holding middle mouse button pans the view instead.
      * @see PolyShape
      * @see com.geocreator.MainWindow.Mode
      */
     @Override
     public void mouseDragged(MouseEvent mouseEvent) {
-        mousePos = mouseEvent.getPoint();
-        if(pressIn) {
-            double diff_x = last_x - mouseEvent.getX();
-            double diff_y = last_y - mouseEvent.getY();
-
-            actualPolyShape.move(diff_x, diff_y);
-
-            last_x = mouseEvent.getX();
-            last_y = mouseEvent.getY();
+        updateMousePos(mouseEvent.getPoint());
+        if(panning) {
+            setViewport(view.panned(mouseEvent.getX() - last_x, mouseEvent.getY() - last_y));
+        } else if(pressIn) {
+            gatherInputFor(actualPolyShape);
+            // distance on canvas is zoomed distance on the drawing
+            pendingMoveX += (last_x - mouseEvent.getX()) / view.getZoom();
+            pendingMoveY += (last_y - mouseEvent.getY()) / view.getZoom();
+            scheduleInput();
         }
-        repaint();
+        last_x = mouseEvent.getX();
+        last_y = mouseEvent.getY();
     }
 
     /**
-     * Updates left bottom corner with current mouse position relative to canvas when mouse changes its position on canvas
+     * Updates left bottom corner with current mouse position on the drawing when mouse changes its position on canvas.
+     * Only the mouse position text is repainted.
      */
     @Override
     public void mouseMoved(MouseEvent mouseEvent) {
-        mousePos = mouseEvent.getPoint();
-        repaint();
+        updateMousePos(mouseEvent.getPoint());
     }
 
     /**
-     * Sets flag that user is no longer holding mouse button
+     * Sets flag that user is no longer holding mouse button or panning the view
      */
     @Override
-    public void mouseReleased(MouseEvent e) {  pressIn = false; }
+    public void mouseReleased(MouseEvent e) {
+        if(e.getButton() == MouseEvent.BUTTON2) {
+            panning = false;
+            return;
+        }
+        flushInput();
+        pressIn = false;
+        history.seal();     // drag gesture ends
+    }
 
     /**
      * If current mode is EDITING, moving mouse wheel makes shapes scale (or rotate if CTRL is pressed)
+     * Notches are summed and applied once per frame, see {@link #INPUT_FPS}.
+     * Repaints only area covered by that shape before and after transformation.
+     * Otherwise, or while SHIFT is pressed, moving mouse wheel zooms the view at mouse position.
      * @see PolyShape
+     * @see Viewport
      */
     @Override
     public void mouseWheelMoved(MouseWheelEvent mouseWheelEvent) {
-        if(actualPolyShape != null && outerWindow.getActiveMode() == MainWindow.Mode.EDITING) {
-            int notches = mouseWheelEvent.getWheelRotation();
-            if(rotateModeCtrlKeyPressed) {
-                actualPolyShape.modifyRotateTransformIndex(notches);
-            } else {
-                actualPolyShape.modifyScaleTransformFactor(notches*0.025);
-            }
+        boolean editing = actualPolyShape != null && outerWindow.getActiveMode() == MainWindow.Mode.EDITING;
+        if(!editing || mouseWheelEvent.isShiftDown()) {
+            // view can be zoomed even while document is loading
+            setViewport(view.zoomedAt(mouseWheelEvent.getPoint(), -mouseWheelEvent.getWheelRotation()));
+            return;
         }
-        repaint();
+        if(isLoading()) {
+            return;
+        }
+        gatherInputFor(actualPolyShape);
+        int notches = mouseWheelEvent.getWheelRotation();
+        if(rotateModeCtrlKeyPressed) {
+            pendingRotateIndex += notches;
+        } else if(pendingScaleFactor + notches*0.025 >= 0.025) {
+            // same limit as PolyShape.modifyScaleTransformFactor, checked for every event
+            pendingScaleFactor += notches*0.025;
+        }
+        scheduleInput();
     }
 
     @Override
@@ -377,6 +1243,9 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
      */
     @Override
     public void mouseClicked(MouseEvent e) {
+       if(isLoading()) {
+           return;
+       }
        if(outerWindow.getActiveMode() == MainWindow.Mode.EDITING && actualPolyShape != null && e.getButton() == MouseEvent.BUTTON3) {
            outerWindow.getPopupShapeEditMenu().setPickerColor(actualPolyShape.getBackGroundColor());
            outerWindow.showPopupShapeEditMenuAt(e.getX(), e.getY());
@@ -388,6 +1257,9 @@ public class GeometricCanvas extends JPanel implements MouseListener, MouseMotio
      */
     @Override
     public void keyPressed(KeyEvent keyEvent) {
+        if(isLoading()) {
+            return;
+        }
         rotateModeCtrlKeyPressed = (keyEvent.getKeyCode() == KeyEvent.VK_CONTROL || rotateModeCtrlKeyPressed);
         if(outerWindow.getActiveMode() != MainWindow.Mode.EDITING) {
             switch(keyEvent.getKeyCode()) {
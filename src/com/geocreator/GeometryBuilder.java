@@ -0,0 +1,69 @@
+package com.geocreator;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds drawable geometry and bounds of many {@link PolyShape} objects at once on {@link ForkJoinPool#commonPool()}.<br>
+ * Documents only store vertices, transform factors and colors of shapes, geometry derived from them is rebuilt
+ * after load by this fork/join pass instead of one shape at a time on loading thread or on first paint.
+ * Shapes are split in halves until there are at most {@value #THRESHOLD} of them, which are built in a row.<br>
+ * Shapes must not be touched by other threads until build finishes, joining the task makes built geometry visible.
+ * @see PolyShape#getBounds2D()
+ * @see DocumentLoader
+ */
+public class GeometryBuilder extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 256;
+
+    private PolyShape[] shapes;
+    private int from;
+    private int to;
+
+    private GeometryBuilder(PolyShape[] shapes, int from, int to) {
+        this.shapes = shapes;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if(to - from <= THRESHOLD) {
+            for(int i = from; i < to; i++) {
+                shapes[i].getShape();   // bounds of moved shape are kept, drawable shape is not
+                shapes[i].getBounds2D();
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new GeometryBuilder(shapes, from, mid), new GeometryBuilder(shapes, mid, to));
+    }
+
+    /**
+     * Starts building geometry of shapes in background
+     * @param polyShapes shapes to build
+     * @return task to be joined before shapes are used
+     */
+    public static ForkJoinTask<Void> submit(List<PolyShape> polyShapes) {
+        PolyShape[] array = polyShapes.toArray(new PolyShape[0]);
+        return ForkJoinPool.commonPool().submit(new GeometryBuilder(array, 0, array.length));
+    }
+
+    /**
+     * Builds geometry of shapes, returns when all of them are built
+     * @param polyShapes shapes to build
+     */
+    public static void build(List<PolyShape> polyShapes) {
+        build(polyShapes.toArray(new PolyShape[0]));
+    }
+
+    /**
+     * Builds geometry of shapes, returns when all of them are built
+     * @param shapes shapes to build
+     */
+    static void build(PolyShape[] shapes) {
+        ForkJoinPool.commonPool().invoke(new GeometryBuilder(shapes, 0, shapes.length));
+    }
+}
@@ -0,0 +1,107 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-screen cache of everything {@link GeometricCanvas} paints except one live {@link PolyShape}.<br>
+ * Shapes painted below the live shape (together with canvas background) are rasterized into one image
+ * and shapes painted above it into a second, transparent one. While only the live shape changes
+ * (eg. it is dragged, scaled or rotated) each frame is just two image blits and one shape.<br>
+ * Cache has to be invalidated by the canvas whenever any other shape, their order or the canvas size changes.
+ * @see GeometricCanvas
+ * @see ShapeRenderer
+ */
+public class LayerCache {
+    private BufferedImage below;        // canvas background and shapes under live shape
+    private BufferedImage above;        // shapes over live shape, null if there are none
+    private PolyShape liveShape;        // shape the layers were built around
+    private boolean valid = false;
+
+    /**
+     * Marks cached layers outdated, they will be rebuilt on next paint
+     */
+    public void invalidate() {
+        valid = false;
+        liveShape = null;
+    }
+
+    /**
+     * Checks if cached layers were built around specified live shape and for specified device size
+     * @param live live shape
+     * @param width device width in pixels
+     * @param height device height in pixels
+     * @return true if layers can be used as they are
+     */
+    public boolean isValidFor(PolyShape live, int width, int height) {
+        return valid && liveShape == live && below != null && below.getWidth() == width && below.getHeight() == height;
+    }
+
+    /**
+     * Rasterizes all shapes except live one into below and above layers, on all cores if there are many of them
+     * (see {@link BandedRenderer}).
+     * @param shapes all shapes in painting order
+     * @param live shape that will be painted on its own
+     * @param background canvas background color
+     * @param transform transform from world to device pixels, eg. view transform followed by HiDPI scaling
+     * @param width device width in pixels
+     * @param height device height in pixels
+     * @return number of shapes skipped because they lie outside of layers
+     */
+    public int rebuild(Iterable<PolyShape> shapes, PolyShape live, Color background, AffineTransform transform, int width, int height) {
+        if(below == null || below.getWidth() != width || below.getHeight() != height) {
+            below = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        above = null;
+
+        List<PolyShape> belowShapes = new ArrayList<>();
+        List<PolyShape> aboveShapes = new ArrayList<>();
+        boolean liveFound = false;
+        for(PolyShape pls : shapes) {
+            if(pls == live) {
+                liveFound = true;
+            } else if(!liveFound) {
+                belowShapes.add(pls);
+            } else if(pls.isDrawable()) {
+                aboveShapes.add(pls);
+            }
+        }
+
+        Graphics2D belowGraphics = below.createGraphics();
+        belowGraphics.setColor(background);
+        belowGraphics.fillRect(0, 0, width, height);
+        belowGraphics.dispose();
+        int skipped = BandedRenderer.paint(below, belowShapes, transform, null);
+        if(!aboveShapes.isEmpty()) {
+            above = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            skipped += BandedRenderer.paint(above, aboveShapes, transform, null);
+        }
+
+        liveShape = live;
+        valid = true;
+        return skipped;
+    }
+
+    /**
+     * Paints cached layers with live shape between them
+     * @param g2d graphics to paint on
+     * @param live current state of live shape, eg. newer snapshot of shape the layers were built around
+     * @param highlightLive true if live shape should have its border highlighted
+     * @param width logical width of painted area
+     * @param height logical height of painted area
+     * @param view transform from world to logical coordinates the layers were built with, see {@link Viewport}
+     */
+    public void paint(Graphics2D g2d, PolyShape live, boolean highlightLive, int width, int height, AffineTransform view) {
+        g2d.drawImage(below, 0, 0, width, height, null);
+        AffineTransform saved = g2d.getTransform();
+        g2d.transform(view);
+        ShapeRenderer.paintShape(g2d, live, highlightLive);
+        g2d.setTransform(saved);
+        if(above != null) {
+            g2d.drawImage(above, 0, 0, width, height, null);
+        }
+    }
+}
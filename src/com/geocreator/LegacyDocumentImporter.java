@@ -0,0 +1,106 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.io.*;
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * One-way importer of documents saved by the first release with Java serialization of {@link GeometricCanvasSavedState}.<br>
+ * Serialized classes are resolved to their frozen copies in {@code com.geocreator.legacy} package, so current classes
+ * can change freely. Only classes that could appear in such document are allowed to be deserialized.
+ * Imported shapes are converted to current {@link PolyShape} objects, saving them again writes {@link DocumentFormat}.
+ * @see DocumentFormat
+ * @see com.geocreator.legacy.GeometricCanvasSavedState
+ * @see com.geocreator.legacy.PolyShape
+ */
+public class LegacyDocumentImporter {
+    /**
+     * {@link ObjectInputStream} resolving old GeoCreator classes to their legacy copies
+     * and rejecting anything that could not be a part of saved document.
+     */
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            switch(name) {
+                case "com.geocreator.PolyShape":
+                    return com.geocreator.legacy.PolyShape.class;
+                case "com.geocreator.GeometricCanvasSavedState":
+                    return com.geocreator.legacy.GeometricCanvasSavedState.class;
+                case "com.geocreator.MainWindow$Mode":
+                case "java.lang.Enum":
+                case "java.lang.Number":
+                case "java.util.LinkedList":
+                case "java.util.Vector":
+                case "java.awt.Point":
+                case "java.awt.Color":
+                case "[Ljava.lang.Object;":
+                case "[F":
+                case "[D":
+                case "[B":
+                case "[I":
+                    return super.resolveClass(desc);
+                default:
+                    if(name.startsWith("java.awt.geom.")) {
+                        return super.resolveClass(desc);
+                    }
+                    throw new InvalidClassException(name, "Unexpected class in GeoCreator document");
+            }
+        }
+    }
+
+    /**
+     * Checks whether file starts with magic bytes of Java serialization stream
+     * @param path file path
+     * @return true if file might be a document saved by first release, false otherwise
+     * @throws IOException
+     */
+    public static boolean isLegacyDocument(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads document saved with Java serialization
+     * @param path file path
+     * @return shapes and next free ID
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws StreamCorruptedException if file is not a serialized document
+     */
+    public static GeometricCanvasSavedState importFile(String path) throws IOException, ClassNotFoundException {
+        com.geocreator.legacy.GeometricCanvasSavedState legacy;
+        try (ObjectInputStream ois = new LegacyObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            Object state = ois.readObject();
+            if(!(state instanceof com.geocreator.legacy.GeometricCanvasSavedState)) {
+                throw new StreamCorruptedException("Not a GeoCreator document");
+            }
+            legacy = (com.geocreator.legacy.GeometricCanvasSavedState)state;
+        }
+
+        LinkedList<PolyShape> polyShapes = new LinkedList<>();
+        for(com.geocreator.legacy.PolyShape old : legacy.polyShapes) {
+            Vector<Point> coordinates = old.getCoordinates();
+            if(coordinates.isEmpty()) {
+                continue;   // shape that was never drawn
+            }
+            double[] coords = new double[2 * coordinates.size()];
+            for(int i = 0; i < coordinates.size(); i++) {
+                coords[2*i] = coordinates.get(i).getX();
+                coords[2*i+1] = coordinates.get(i).getY();
+            }
+            polyShapes.add(new PolyShape(old.getID(), old.getMode(), old.getBackgroundColor(),
+                    old.getScaleTransformFactor(), old.getRotateTransformIndex(), coords));
+        }
+        System.out.println("[LegacyDocumentImporter] Imported " + polyShapes.size() + " shapes from " + path);
+        return new GeometricCanvasSavedState(polyShapes, legacy.nextFreePolyShapeID);
+    }
+}
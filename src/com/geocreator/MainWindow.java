@@ -4,6 +4,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * {@link MainWindow} is extension for {@link JFrame} with some additional features.
@@ -70,6 +72,7 @@ public class MainWindow extends JFrame {
     private Mode activeMode = Mode.CREATING_POLYGONS;       // Current mode application is working
     private String currentFile = "New File";                // Current active working file which we will save to
     private boolean newFileFlag = true;                     // Flag indicating that there is no existing file and we work on new file
+    private int loadProgress = -1;                          // Percent of document loaded, -1 if nothing is being loaded
 
     private PopupShapeEditMenu popupShapeEditMenu = new PopupShapeEditMenu("Shape Editor", this);       // Menu under right click
 
@@ -115,6 +118,15 @@ public class MainWindow extends JFrame {
         updateTitle();
     }
 
+    /**
+     * Sets progress of document being loaded, shown in title bar
+     * @param percent percent loaded or -1 when loading ended
+     */
+    public void setLoadProgress(int percent) {
+        this.loadProgress = percent;
+        updateTitle();
+    }
+
     /**
      * Returns reference to right click popup menu
      * @return popup menu reference
@@ -185,7 +197,7 @@ public class MainWindow extends JFrame {
      * Updates MainWindow frame title bar adjusting current mode and working file name
      */
     public void updateTitle() {
-        setTitle("GeoCreator - [" + getActiveMode() + "] - " + getCurrentFile());
+        setTitle("GeoCreator - [" + getActiveMode() + "] - " + getCurrentFile() + (loadProgress >= 0 ? " - loading " + loadProgress + "%" : ""));
     }
 
     /**
@@ -206,7 +218,14 @@ public class MainWindow extends JFrame {
         updateTitle();
         setSize(new Dimension(1024, 720));
         setMinimumSize(new Dimension(495, 495));
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                System.out.println("[MainWindow] Window closing");
+                ExitEvent.exit();   // same as File > Exit, so saves are not cut off
+            }
+        });
         setIconImage(createImageIcon("/img/program_icon.png", "GeoCreator").getImage());
 
         JPanel buttonPanel = new JPanel();
@@ -245,6 +264,10 @@ public class MainWindow extends JFrame {
 
         JMenu menuFileTab = new JMenu("File");
         menuFileTab.setMnemonic(KeyEvent.VK_F);
+        JMenu menuEditTab = new JMenu("Edit");
+        menuEditTab.setMnemonic(KeyEvent.VK_D);
+        JMenu menuViewTab = new JMenu("View");
+        menuViewTab.setMnemonic(KeyEvent.VK_V);
         JMenu menuModeTab = new JMenu("Mode");
         menuModeTab.setMnemonic(KeyEvent.VK_M);
         JMenu menuInfoTab = new JMenu("Info");
@@ -263,6 +286,10 @@ public class MainWindow extends JFrame {
                     "Ctrl-S -Saves current working file\n" +
                     "Ctrl-Shift-S - Saves current file to other file\n" +
                     "Ctrl-E - Exits program\n" +
+                    "Ctrl-Z / Ctrl-Y - Undoes / redoes last change of shapes\n" +
+                    "Ctrl-Plus / Ctrl-Minus / Ctrl-0 - Zooms in / zooms out / resets view\n" +
+                    "Dragging with middle mouse button - pans view\n" +
+                    "Scrolling (Shift-scrolling while editing a shape) - zooms view at mouse position\n" +
                     "Ctrl-F1 through Ctrl-F4 - changes active mode\n" +
                     "Holding Ctrl while scrolling - changes scaling to rotating.\n" +
                     "While creating polygons, Space press - creates new polygon\n\n" +
@@ -275,6 +302,8 @@ public class MainWindow extends JFrame {
         //Build the first menu.
         menuFileTab.getAccessibleContext().setAccessibleDescription("Save/load files and close program.");
         menuBar.add(menuFileTab);
+        menuBar.add(menuEditTab);
+        menuBar.add(menuViewTab);
         menuBar.add(menuModeTab);
         menuBar.add(menuInfoTab);
 
@@ -311,6 +340,20 @@ public class MainWindow extends JFrame {
         menuItem.addActionListener(new ExportToPNGEvent(this));
         menuFileTab.add(menuItem);
 
+        // Menu item: Export to PNG in high resolution
+        menuItem = new JMenuItem("Export to PNG (scaled)...");
+        menuItem.addActionListener(new ExportToPNGEvent(this, true));
+        menuFileTab.add(menuItem);
+
+        // Menu items: Export to vector formats
+        menuItem = new JMenuItem("Export to SVG...");
+        menuItem.addActionListener(new ExportToVectorEvent(this, VectorExporter.Format.SVG));
+        menuFileTab.add(menuItem);
+
+        menuItem = new JMenuItem("Export to PDF...");
+        menuItem.addActionListener(new ExportToVectorEvent(this, VectorExporter.Format.PDF));
+        menuFileTab.add(menuItem);
+
         //////////////////////////////////////////////////////////////////////////////////
         menuFileTab.addSeparator();
 
@@ -321,6 +364,41 @@ public class MainWindow extends JFrame {
         menuItem.addActionListener(new ExitEvent());
         menuFileTab.add(menuItem);
 
+        // Menu item: Undo
+        menuItem = new JMenuItem("Undo");
+        menuItem.setMnemonic(KeyEvent.VK_U);
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, ActionEvent.CTRL_MASK));
+        menuItem.addActionListener(new UndoEvent(this));
+        menuEditTab.add(menuItem);
+
+        // Menu item: Redo
+        menuItem = new JMenuItem("Redo");
+        menuItem.setMnemonic(KeyEvent.VK_R);
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, ActionEvent.CTRL_MASK));
+        menuItem.addActionListener(new RedoEvent(this));
+        menuEditTab.add(menuItem);
+
+        // Menu item: Zoom in
+        menuItem = new JMenuItem("Zoom In");
+        menuItem.setMnemonic(KeyEvent.VK_I);
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, ActionEvent.CTRL_MASK));
+        menuItem.addActionListener(new ZoomEvent(this, 1));
+        menuViewTab.add(menuItem);
+
+        // Menu item: Zoom out
+        menuItem = new JMenuItem("Zoom Out");
+        menuItem.setMnemonic(KeyEvent.VK_O);
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, ActionEvent.CTRL_MASK));
+        menuItem.addActionListener(new ZoomEvent(this, -1));
+        menuViewTab.add(menuItem);
+
+        // Menu item: Reset view
+        menuItem = new JMenuItem("Actual Size");
+        menuItem.setMnemonic(KeyEvent.VK_A);
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, ActionEvent.CTRL_MASK));
+        menuItem.addActionListener(new ZoomEvent(this, 0));
+        menuViewTab.add(menuItem);
+
         // Modes menu items
         // Mode Creating Polygons (default)
         rbModeCreatingPolygons = new JRadioButtonMenuItem("Creating Polygons");
@@ -19,6 +19,7 @@ public class ModeChangedEvent implements ActionListener {
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
+        outerWindow.cvs.finishActualPolyShape();
         outerWindow.setActiveMode(mode);
 
         if(outerWindow.getActiveMode() != MainWindow.Mode.EDITING) {
@@ -3,16 +3,15 @@ package com.geocreator;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.File;
 import java.io.IOException;
-import java.io.StreamCorruptedException;
 
 /**
  * Event fired to choose an existing file with saved shapes
- * to load that data into GeometricCanvas.
+ * to load that data into GeometricCanvas. File is loaded in background and shown while it is being read.
  * @see GeometricCanvas
  * @see GeometricCanvasSavedState
  * @see JFileChooser
+ * @see DocumentLoader
  */
 public class OpenFileEvent implements ActionListener {
     private MainWindow outerWindow;
@@ -27,15 +26,10 @@ public class OpenFileEvent implements ActionListener {
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 String path = fc.getSelectedFile().getPath();
                 outerWindow.cvs.loadStateFromFile(path);
-                outerWindow.setCurrentFile(path);
             } else {
                 throw new IOException("No file approved.");
             }
-            outerWindow.setNewFileFlag(false);
-            JOptionPane.showMessageDialog(outerWindow, "File loaded successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-        }  catch(StreamCorruptedException e) {
-            JOptionPane.showMessageDialog(null, "Wrong file type or corrupted data.", "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "Could not open file.", "Error", JOptionPane.ERROR_MESSAGE);
         }
         System.out.println("[Event] " + this.getClass().getSimpleName());
@@ -0,0 +1,456 @@
+package com.geocreator;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Document opened out-of-core - its shapes stay in the file and are brought into memory a page at a time when needed.<br>
+ * Records of consecutive shapes (in painting order) form pages of {@value #PAGE_SHAPES} shapes. Document is scanned once
+ * when opened to remember file range and bounds of every page, the page index. Painting and hit-testing only look at pages
+ * whose bounds reach the painted area or tested point; such page is memory-mapped and decoded, and stays resident
+ * until resident pages take more than {@code geocreator.pageBudgetMB} (128 by default) megabytes of heap,
+ * when least recently used pages are evicted.<br>
+ * Shapes that are edited leave the document for {@link GeometricCanvas} (see {@link #release(PolyShape)}),
+ * shapes changed by journal replay are kept in memory at their place (see {@link #checkOut(PolyShape)}).
+ * Z-order of document shape is its position in the file, so shapes on canvas above the document have z-order
+ * of at least {@link #getShapeCount()} and those below negative z-order.<br>
+ * Page index and resident pages are only used on Event Dispatch Thread, snapshots can be read on any thread.
+ * Documents bigger than {@code geocreator.outOfCoreBytes} (256 MiB by default) are opened this way.
+ * @see DocumentFormat
+ * @see DocumentLoader
+ */
+public class PagedDocument implements Closeable {
+    public static final long OUT_OF_CORE_BYTES = Long.getLong("geocreator.outOfCoreBytes", 256L << 20);
+    public static final long BUDGET_BYTES = Long.getLong("geocreator.pageBudgetMB", 128) << 20;
+    public static final int PAGE_SHAPES = 1024;
+
+    /**
+     * Run of consecutive shape records in file
+     */
+    static class Page {
+        final int number;               // position of page in document
+        final long offset;              // position of first record in file
+        final int length;               // number of bytes of all records
+        final int count;                // number of shapes
+        final Rectangle2D bounds;       // area covered by shapes of page including their borders
+        long footprint;                 // heap taken by decoded shapes while page is resident
+        int replaced;                   // number of shapes of page released or checked out
+
+        Page(int number, long offset, int length, int count, Rectangle2D bounds) {
+            this.number = number;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.bounds = bounds;
+        }
+
+        /**
+         * Returns z-order of first shape of page
+         * @return z-order
+         */
+        long firstZOrder() {
+            return (long)number * PAGE_SHAPES;
+        }
+    }
+
+    private String path;
+    private FileChannel channel;
+    private ArrayList<Page> pages = new ArrayList<>();
+    private long shapeCount = 0;
+
+    // decoded pages in order of use, least recently used first
+    private LinkedHashMap<Page, List<PolyShape>> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes = 0;
+    private long budget = BUDGET_BYTES;
+
+    // document z-order -> shape in memory that is painted at its place, or null if shape left the document
+    private HashMap<Long, PolyShape> replaced = new HashMap<>();
+
+    // statistics
+    private long pageIns = 0;
+    private long evictions = 0;
+
+    /**
+     * Checks whether document should be opened out-of-core
+     * @param path file path
+     * @return true if file is a document bigger than {@link #OUT_OF_CORE_BYTES}
+     * @throws IOException
+     */
+    public static boolean shouldOpen(String path) throws IOException {
+        return Files.size(Paths.get(path)) > OUT_OF_CORE_BYTES && DocumentFormat.isDocument(path);
+    }
+
+    /**
+     * Opens document file, pages are added as document is scanned
+     * @param path file path
+     * @throws IOException
+     */
+    public PagedDocument(String path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    }
+
+    /**
+     * Reads records of next page, computing bounds of page. Called while document is scanned, on any thread.
+     * @param reader reader positioned at first record of page
+     * @param number page number
+     * @param count number of shapes in page
+     * @param keepIDs IDs of shapes that should be kept
+     * @param kept receives kept shapes
+     * @return page
+     * @throws IOException
+     */
+    static Page scanPage(DocumentReader reader, int number, int count, Set<Long> keepIDs, List<PolyShape> kept) throws IOException {
+        long offset = reader.getPosition();
+        List<PolyShape> shapes = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            shapes.add(reader.readPolyShape());
+        }
+        GeometryBuilder.build(shapes);
+
+        Rectangle2D bounds = null;
+        for(int i = 0; i < count; i++) {
+            PolyShape pls = shapes.get(i);
+            if(pls.isDrawable()) {
+                if(bounds == null) {
+                    bounds = (Rectangle2D)pls.getBounds2D().clone();
+                } else {
+                    bounds.add(pls.getBounds2D());
+                }
+            }
+            if(keepIDs.contains(pls.getID())) {
+                pls.setZOrder((long)number * PAGE_SHAPES + i);
+                kept.add(pls);
+            }
+        }
+        if(bounds == null) {
+            bounds = new Rectangle2D.Double();
+        } else {
+            double margin = ShapeRenderer.BORDER_MARGIN;
+            bounds.setRect(bounds.getX() - margin, bounds.getY() - margin, bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin);
+        }
+        return new Page(number, offset, (int)(reader.getPosition() - offset), count, bounds);
+    }
+
+    /**
+     * Adds scanned pages to page index
+     * @param scanned pages in order
+     */
+    void addPages(List<Page> scanned) {
+        for(Page page : scanned) {
+            pages.add(page);
+            shapeCount += page.count;
+        }
+    }
+
+    /**
+     * Returns number of shapes stored in document, including those that left it
+     * @return number of shapes
+     */
+    public long getShapeCount() {
+        return shapeCount;
+    }
+
+    /**
+     * Checks whether shape is painted as part of document
+     * @param pls shape
+     * @return true if z-order of shape belongs to document
+     */
+    public boolean isDocumentShape(PolyShape pls) {
+        return pls.getZOrder() >= 0 && pls.getZOrder() < shapeCount;
+    }
+
+    /**
+     * Decodes shapes of page. Does not touch page index, can be called on any thread.
+     * @param page page
+     * @return shapes of page with z-order set
+     * @throws IOException
+     */
+    private List<PolyShape> decode(Page page) throws IOException {
+        DocumentReader reader = new DocumentReader(channel.map(FileChannel.MapMode.READ_ONLY, page.offset, page.length));
+        List<PolyShape> shapes = new ArrayList<>(page.count);
+        for(int i = 0; i < page.count; i++) {
+            PolyShape pls = reader.readPolyShape();
+            pls.setZOrder(page.firstZOrder() + i);
+            shapes.add(pls);
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns decoded shapes of page, paging it in if needed and evicting least recently used pages over budget
+     * @param page page
+     * @return shapes of page or null if page could not be read
+     */
+    private List<PolyShape> pageIn(Page page) {
+        List<PolyShape> shapes = resident.get(page);
+        if(shapes != null) {
+            return shapes;
+        }
+        try {
+            shapes = decode(page);
+        } catch (IOException e) {
+            System.out.println("[PagedDocument] Could not read page " + page.number + " of " + path + ": " + e);
+            return null;
+        }
+        GeometryBuilder.build(shapes);
+        long footprint = 0;
+        for(PolyShape pls : shapes) {
+            footprint += pls.estimateHeapFootprint();
+        }
+        page.footprint = footprint;
+        resident.put(page, shapes);
+        residentBytes += footprint;
+        pageIns++;
+
+        Iterator<Map.Entry<Page, List<PolyShape>>> eldest = resident.entrySet().iterator();
+        while(residentBytes > budget && eldest.hasNext()) {
+            Page evicted = eldest.next().getKey();
+            if(evicted != page) {
+                residentBytes -= evicted.footprint;
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns shape painted at place of document shape
+     * @param page page of shape
+     * @param pls shape as stored in document
+     * @return replacing shape, the same shape or null if shape left document
+     */
+    private PolyShape resolve(Page page, PolyShape pls) {
+        if(page.replaced == 0 || !replaced.containsKey(pls.getZOrder())) {
+            return pls;
+        }
+        return replaced.get(pls.getZOrder());
+    }
+
+    /**
+     * Paints shapes of pages reaching painted area in painting order, skipping shapes outside of it
+     * @param g2d graphics to paint on
+     * @param clip painted area or null to paint all pages
+     * @return number of shapes skipped because they lie outside of painted area
+     */
+    public int paint(Graphics2D g2d, Rectangle clip) {
+        int skipped = 0;
+        for(Page page : pages) {
+            if(clip != null && !page.bounds.intersects(clip)) {
+                skipped += page.count;
+                continue;
+            }
+            List<PolyShape> shapes = pageIn(page);
+            if(shapes == null) {
+                continue;
+            }
+            for(PolyShape pls : shapes) {
+                PolyShape shown = resolve(page, pls);
+                if(shown != null && !ShapeRenderer.paintShape(g2d, shown, false, clip)) {
+                    skipped++;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Finds document shape that is rendered on top at specified point
+     * @param point point on canvas
+     * @return topmost shape containing the point or null if there is none
+     */
+    public PolyShape topmostAt(Point2D point) {
+        for(int p = pages.size() - 1; p >= 0; p--) {
+            Page page = pages.get(p);
+            if(!page.bounds.contains(point)) {
+                continue;
+            }
+            List<PolyShape> shapes = pageIn(page);
+            if(shapes == null) {
+                continue;
+            }
+            for(int i = shapes.size() - 1; i >= 0; i--) {
+                PolyShape pls = resolve(page, shapes.get(i));
+                if(pls != null && pls.contains(point.getX(), point.getY())) {
+                    return pls;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns page holding document shape
+     * @param pls document shape
+     * @return page
+     */
+    private Page pageOf(PolyShape pls) {
+        return pages.get((int)(pls.getZOrder() / PAGE_SHAPES));
+    }
+
+    /**
+     * Takes shape out of document, it is no longer painted or found at its place.
+     * Called before shape is moved to canvas or deleted, while it still has its document z-order.
+     * @param pls document shape
+     */
+    public void release(PolyShape pls) {
+        Page page = pageOf(pls);
+        if(!replaced.containsKey(pls.getZOrder())) {
+            page.replaced++;
+        }
+        replaced.put(pls.getZOrder(), null);
+    }
+
+    /**
+     * Keeps changed shape in memory and paints it at its place in document instead of the stored one
+     * @param pls changed document shape
+     */
+    public void checkOut(PolyShape pls) {
+        Page page = pageOf(pls);
+        if(!replaced.containsKey(pls.getZOrder())) {
+            page.replaced++;
+        }
+        replaced.put(pls.getZOrder(), pls);
+        if(pls.isDrawable()) {
+            Rectangle2D bounds = pls.getBounds2D();
+            double margin = ShapeRenderer.BORDER_MARGIN;
+            page.bounds.add(new Rectangle2D.Double(bounds.getX() - margin, bounds.getY() - margin,
+                    bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin));
+        }
+    }
+
+    /**
+     * Returns number of bytes of heap taken by resident pages and checked out shapes
+     * @return approximate heap footprint in bytes
+     */
+    public long estimateHeapFootprint() {
+        long bytes = residentBytes;
+        for(PolyShape pls : replaced.values()) {
+            if(pls != null) {
+                bytes += pls.estimateHeapFootprint();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns paging statistics for diagnostics
+     * @return pages, resident pages, page-ins and evictions
+     */
+    public String getStatistics() {
+        return pages.size() + " pages, " + resident.size() + " resident (~" + residentBytes / 1024 + " KiB of "
+                + budget / 1024 + " KiB budget), " + pageIns + " page-ins, " + evictions + " evictions";
+    }
+
+    /**
+     * Takes snapshot of whole document together with shapes of canvas below and above it.
+     * Snapshot decodes pages on its own as it is iterated, on any thread, and keeps none of them.
+     * @param below snapshots of shapes painted below document
+     * @param above snapshots of shapes painted above document
+     * @return shapes in painting order
+     */
+    public Collection<PolyShape> snapshot(List<PolyShape> below, List<PolyShape> above) {
+        List<Page> pageList = new ArrayList<>(pages);
+        HashMap<Long, PolyShape> replacedCopy = new HashMap<>();
+        for(Map.Entry<Long, PolyShape> entry : replaced.entrySet()) {
+            replacedCopy.put(entry.getKey(), entry.getValue() != null ? entry.getValue().snapshot() : null);
+        }
+        int size = (int)Math.min(Integer.MAX_VALUE, below.size() + above.size() + shapeCount - released());
+
+        return new AbstractCollection<PolyShape>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<PolyShape> iterator() {
+                return new Iterator<PolyShape>() {
+                    private Iterator<PolyShape> current = below.iterator();
+                    private int nextPage = 0;           // next page to decode, pages come after shapes below
+                    private boolean inDocument = false;
+                    private boolean aboveStarted = false;
+                    private PolyShape next = advance();
+
+                    private PolyShape advance() {
+                        while(true) {
+                            while(current.hasNext()) {
+                                PolyShape pls = current.next();
+                                if(!inDocument || !replacedCopy.containsKey(pls.getZOrder())) {
+                                    return pls;
+                                }
+                                PolyShape replacement = replacedCopy.get(pls.getZOrder());
+                                if(replacement != null) {
+                                    return replacement;
+                                }
+                            }
+                            if(nextPage < pageList.size()) {
+                                inDocument = true;
+                                try {
+                                    current = decode(pageList.get(nextPage++)).iterator();
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            } else if(!aboveStarted) {
+                                inDocument = false;
+                                aboveStarted = true;
+                                current = above.iterator();
+                            } else {
+                                return null;
+                            }
+                        }
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public PolyShape next() {
+                        if(next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        PolyShape pls = next;
+                        next = advance();
+                        return pls;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Counts document shapes that left document
+     * @return number of released shapes
+     */
+    private long released() {
+        long count = 0;
+        for(PolyShape pls : replaced.values()) {
+            if(pls == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes document file. Snapshots taken before can't be read after.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
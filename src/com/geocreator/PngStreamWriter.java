@@ -0,0 +1,425 @@
+package com.geocreator;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder writing 8-bit truecolor images (with or without alpha channel) row by row.<br>
+ * Rows are filtered as they arrive and collected into blocks of about {@value #BLOCK_SIZE} bytes. Blocks are deflated
+ * in parallel on a {@link ForkJoinPool}, each primed with last 32 KiB of the previous block as preset dictionary
+ * and ended with a sync flush, so concatenated they form one zlib stream (the way pigz does it).
+ * Only a few blocks are in flight at a time, the whole image never has to be held in memory.<br>
+ * Compression level is chosen by {@link Compression}, default is taken from system property {@code geocreator.pngCompression}
+ * (fast, balanced or smallest).
+ * @see TiledImageExporter
+ */
+public class PngStreamWriter implements Closeable {
+    /**
+     * Trade-off between encoding speed and file size
+     */
+    public enum Compression {
+        FAST(Deflater.BEST_SPEED, 0x01),        // fixed Sub filter, fastest deflate level
+        BALANCED(6, 0x9c),                      // adaptive filter per row, default deflate level
+        SMALLEST(Deflater.BEST_COMPRESSION, 0xda);  // adaptive filter per row, best deflate level
+
+        private final int level;
+        private final int zlibFlags;            // second byte of zlib header announcing the level
+
+        Compression(int level, int zlibFlags) {
+            this.level = level;
+            this.zlibFlags = zlibFlags;
+        }
+
+        /**
+         * Returns compression set by system property geocreator.pngCompression, balanced if not set
+         * @return default compression
+         */
+        public static Compression getDefault() {
+            return valueOf(System.getProperty("geocreator.pngCompression", "balanced").toUpperCase());
+        }
+    }
+
+    private static final byte[] SIGNATURE = {(byte)137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int IDAT_SIZE = 64 * 1024;     // maximal payload of single IDAT chunk
+    private static final int BLOCK_SIZE = 128 * 1024;   // filtered image bytes deflated by single task
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int FILTER_NONE = 0, FILTER_SUB = 1, FILTER_UP = 2, FILTER_AVERAGE = 3, FILTER_PAETH = 4;
+
+    private DataOutputStream out;
+    private int width;
+    private int height;
+    private boolean alpha;
+    private Compression compression;
+    private int bytesPerPixel;
+    private int rowsWritten = 0;
+
+    private byte[] current;             // unfiltered samples of row being written
+    private byte[] previous;            // unfiltered samples of previous row
+    private byte[][] filtered;          // current row with each filter applied, filter type byte first
+
+    private byte[] block;               // filtered rows not yet handed to deflate
+    private int blockSize = 0;
+    private byte[] previousBlock;       // last block handed to deflate, source of preset dictionary
+    private int previousBlockSize = 0;
+    private Adler32 adler = new Adler32();  // checksum of all filtered bytes, ends zlib stream
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();  // blocks being deflated in order
+    private byte[] idat = new byte[IDAT_SIZE];
+    private int idatSize = 0;
+
+    // statistics
+    private long rawSize = 0;
+    private long outputSize = 0;
+    private long encodeNanos = 0;
+
+    /**
+     * Writes PNG signature and image header, uses default compression and no alpha channel
+     * @param out stream to write to, closed together with this writer
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @throws IOException
+     */
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, false, Compression.getDefault());
+    }
+
+    /**
+     * Writes PNG signature and image header
+     * @param out stream to write to, closed together with this writer
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param alpha true if alpha channel should be stored
+     * @param compression compression level
+     * @throws IOException
+     */
+    public PngStreamWriter(OutputStream out, int width, int height, boolean alpha, Compression compression) throws IOException {
+        if(width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        long start = System.nanoTime();
+        this.out = new DataOutputStream(new BufferedOutputStream(out, IDAT_SIZE));
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.compression = compression;
+        this.bytesPerPixel = alpha ? 4 : 3;
+
+        int rowBytes = bytesPerPixel * width;
+        current = new byte[rowBytes];
+        previous = new byte[rowBytes];
+        filtered = new byte[FILTER_PAETH + 1][1 + rowBytes];
+        for(int f = 0; f < filtered.length; f++) {
+            filtered[f][0] = (byte)f;
+        }
+        block = new byte[Math.max(1, BLOCK_SIZE / (1 + rowBytes)) * (1 + rowBytes)];
+
+        this.out.write(SIGNATURE);
+        outputSize += SIGNATURE.length;
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);                // bit depth
+        headerData.writeByte(alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        headerData.writeByte(0);                // deflate compression
+        headerData.writeByte(0);                // adaptive filtering
+        headerData.writeByte(0);                // no interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        writeImageData(new byte[]{0x78, (byte)compression.zlibFlags}, 2);
+        encodeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Checks if image has any pixel that is not fully opaque
+     * @param image image to check
+     * @return true if alpha channel has to be stored
+     */
+    public static boolean needsAlpha(BufferedImage image) {
+        if(!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        int[] row = new int[image.getWidth()];
+        for(int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for(int argb : row) {
+                if((argb >>> 24) != 0xff) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes whole image as PNG, alpha channel is stored only if image has transparent pixels
+     * @param image image to write
+     * @param out stream to write to, it is closed afterwards
+     * @param compression compression level
+     * @return writer with encoding statistics
+     * @throws IOException
+     */
+    public static PngStreamWriter write(BufferedImage image, OutputStream out, Compression compression) throws IOException {
+        PngStreamWriter png = new PngStreamWriter(out, image.getWidth(), image.getHeight(), needsAlpha(image), compression);
+        try {
+            int[] pixels = new int[image.getWidth() * Math.min(64, image.getHeight())];
+            for(int y = 0; y < image.getHeight(); y += 64) {
+                int rows = Math.min(64, image.getHeight() - y);
+                image.getRGB(0, y, image.getWidth(), rows, pixels, 0, image.getWidth());
+                png.writeRows(pixels, 0, image.getWidth(), rows);
+            }
+        } finally {
+            png.close();
+        }
+        return png;
+    }
+
+    /**
+     * Writes single chunk: length, type, data and CRC of type and data
+     * @param type four letter chunk type
+     * @param data chunk data
+     * @param length number of data bytes
+     * @throws IOException
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int)crc.getValue());
+        outputSize += 12 + length;
+    }
+
+    /**
+     * Appends bytes of zlib stream, full IDAT chunks are written out
+     * @param data compressed bytes
+     * @param length number of bytes
+     * @throws IOException
+     */
+    private void writeImageData(byte[] data, int length) throws IOException {
+        for(int off = 0; off < length; ) {
+            int n = Math.min(length - off, idat.length - idatSize);
+            System.arraycopy(data, off, idat, idatSize, n);
+            idatSize += n;
+            off += n;
+            if(idatSize == idat.length) {
+                writeChunk("IDAT", idat, idatSize);
+                idatSize = 0;
+            }
+        }
+    }
+
+    /**
+     * Deflates one block as part of a zlib stream split into independently compressed blocks
+     * @param data filtered image bytes
+     * @param length number of bytes in block
+     * @param dictionary previous block or null for first one, it is never modified after being handed to deflate
+     * @param dictionaryEnd number of bytes in previous block
+     * @param last true if block ends the stream
+     * @return raw deflate data of block
+     */
+    private byte[] deflateBlock(byte[] data, int length, byte[] dictionary, int dictionaryEnd, boolean last) {
+        Deflater deflater = new Deflater(compression.level, true);
+        try {
+            if(dictionary != null) {
+                int size = Math.min(DICTIONARY_SIZE, dictionaryEnd);
+                deflater.setDictionary(dictionary, dictionaryEnd - size, size);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if(last) {
+                deflater.finish();
+                while(!deflater.finished()) {
+                    result.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    result.write(buffer, 0, n);
+                } while(n == buffer.length || !deflater.needsInput());
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes out deflated blocks in order until at most specified number of them is still pending
+     * @param maxPending number of blocks allowed to stay in flight
+     * @throws IOException
+     */
+    private void drain(int maxPending) throws IOException {
+        while(pending.size() > maxPending) {
+            byte[] deflated = pending.poll().join();
+            writeImageData(deflated, deflated.length);
+        }
+    }
+
+    /**
+     * Hands collected rows to deflate and starts new block
+     * @param last true if block ends the image
+     * @throws IOException
+     */
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockSize;
+        byte[] dictionary = previousBlock;
+        int dictionaryEnd = previousBlockSize;
+        adler.update(data, 0, length);
+        rawSize += length;
+        pending.add(pool.submit(() -> deflateBlock(data, length, dictionary, dictionaryEnd, last)));
+        previousBlock = data;
+        previousBlockSize = length;
+        block = new byte[block.length];
+        blockSize = 0;
+        drain(2 * pool.getParallelism());
+    }
+
+    /**
+     * Applies each filter to current row and returns the one that is most likely to compress best
+     * (smallest sum of absolute values of filtered bytes)
+     * @return filtered row, filter type byte first
+     */
+    private byte[] filterRow() {
+        int n = current.length;
+        int bpp = bytesPerPixel;
+        if(compression == Compression.FAST) {
+            byte[] sub = filtered[FILTER_SUB];
+            for(int i = 0; i < n; i++) {
+                sub[i+1] = (byte)(current[i] - (i >= bpp ? current[i-bpp] : 0));
+            }
+            return sub;
+        }
+
+        byte[] none = filtered[FILTER_NONE], sub = filtered[FILTER_SUB], up = filtered[FILTER_UP];
+        byte[] average = filtered[FILTER_AVERAGE], paeth = filtered[FILTER_PAETH];
+        long[] cost = new long[FILTER_PAETH + 1];
+        for(int i = 0; i < n; i++) {
+            int x = current[i] & 0xff;
+            int a = i >= bpp ? current[i-bpp] & 0xff : 0;
+            int b = previous[i] & 0xff;
+            int c = i >= bpp ? previous[i-bpp] & 0xff : 0;
+
+            int p = a + b - c;
+            int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+            int predictor = (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+
+            none[i+1] = (byte)x;
+            sub[i+1] = (byte)(x - a);
+            up[i+1] = (byte)(x - b);
+            average[i+1] = (byte)(x - ((a + b) >> 1));
+            paeth[i+1] = (byte)(x - predictor);
+            cost[FILTER_NONE] += Math.abs(none[i+1]);
+            cost[FILTER_SUB] += Math.abs(sub[i+1]);
+            cost[FILTER_UP] += Math.abs(up[i+1]);
+            cost[FILTER_AVERAGE] += Math.abs(average[i+1]);
+            cost[FILTER_PAETH] += Math.abs(paeth[i+1]);
+        }
+        int best = FILTER_NONE;
+        for(int f = 1; f < cost.length; f++) {
+            if(cost[f] < cost[best]) {
+                best = f;
+            }
+        }
+        return filtered[best];
+    }
+
+    /**
+     * Encodes next rows of image
+     * @param pixels packed ARGB pixels, alpha is ignored unless writer stores alpha channel
+     * @param offset index of first pixel of first row
+     * @param scanlineStride distance between first pixels of consecutive rows
+     * @param rows number of rows to encode
+     * @throws IOException
+     */
+    public void writeRows(int[] pixels, int offset, int scanlineStride, int rows) throws IOException {
+        if(rowsWritten + rows > height) {
+            throw new IllegalStateException("Image has only " + height + " rows");
+        }
+        long start = System.nanoTime();
+        for(int r = 0; r < rows; r++) {
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+
+            int p = offset + r * scanlineStride;
+            for(int x = 0, i = 0; x < width; x++) {
+                int argb = pixels[p + x];
+                current[i++] = (byte)(argb >> 16);
+                current[i++] = (byte)(argb >> 8);
+                current[i++] = (byte)argb;
+                if(alpha) {
+                    current[i++] = (byte)(argb >>> 24);
+                }
+            }
+
+            byte[] row = filterRow();
+            System.arraycopy(row, 0, block, blockSize, row.length);
+            blockSize += row.length;
+            rowsWritten++;
+            if(blockSize == block.length || rowsWritten == height) {
+                submitBlock(rowsWritten == height);
+            }
+        }
+        encodeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Returns number of bytes written so far
+     * @return size of PNG file, complete after close
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Returns time spent encoding, not counting time spent producing rows
+     * @return encoding time in nanoseconds
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * Finishes image data, writes image trailer and closes underlying stream
+     * @throws IOException
+     * @throws IllegalStateException if not all rows were written
+     */
+    @Override
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        try {
+            if(rowsWritten != height) {
+                throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows were written");
+            }
+            drain(0);
+            int checksum = (int)adler.getValue();
+            writeImageData(new byte[]{(byte)(checksum >>> 24), (byte)(checksum >>> 16), (byte)(checksum >>> 8), (byte)checksum}, 4);
+            writeChunk("IDAT", idat, idatSize);
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            for(ForkJoinTask<byte[]> task : pending) {
+                task.cancel(false);
+            }
+            out.close();
+        }
+        encodeNanos += System.nanoTime() - start;
+        System.out.printf("[PngStreamWriter] Encoded %dx%d %s image (%s): %d KiB -> %d KiB in %.1f ms%n",
+                width, height, alpha ? "RGBA" : "RGB", compression.name().toLowerCase(),
+                rawSize / 1024, outputSize / 1024, encodeNanos / 1e6);
+    }
+}
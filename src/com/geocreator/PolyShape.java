@@ -2,9 +2,8 @@ package com.geocreator;
 
 import java.awt.*;
 import java.awt.geom.*;
-import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Vector;
 
 import static com.geocreator.MainWindow.Mode.*;
 
@@ -15,6 +14,14 @@ import static com.geocreator.MainWindow.Mode.*;
  * are created from a set of 2 coordinates while polygons ({@link GeneralPath}) might have any number of them.
  * Each PolyShape has it's own ID that distinguishes it from other objects.
  * Shape can be set to active, and then if they are rendered in canvas - they have their border coloured green and widened.<br>
+ * Vertices are stored as consecutive x and y pairs in a growable primitive array.<br>
+ * Drawable shape is generated lazily - changes only mark it outdated and it is rebuilt once on next {@link #getShape()}.
+ * Moving shape only updates translation of cached {@link AffineTransform}, vertices stay where they were added.
+ * Because of that, shape must not be read from other threads while it is being changed.<br>
+ * Polygon that is still being created is drawn straight from its vertices array, so adding a vertex costs the same
+ * regardless of how many there already are. It is turned into regular transformed shape once construction is finished.<br>
+ * Hit-testing ({@link #contains(double, double)}) does not use drawable shape - point is checked against cached bounds,
+ * transformed back to vertices space and tested with closed-form formula for circles and rectangles or with edge table for polygons.<br>
  * WARNING: Coordinates might not reflect their rendered position in canvas because of {@link AffineTransform} applied to them (scale, rotate, translate).
  * @see Ellipse2D
  * @see Rectangle2D
@@ -23,17 +30,37 @@ import static com.geocreator.MainWindow.Mode.*;
  * @see com.geocreator.MainWindow.Mode
  * @see AffineTransform
  * @see GeometricCanvas
- * @see Serializable
+ * @see DocumentFormat
  */
-public class PolyShape implements Serializable {
-    private Vector<Point> coordinates = new Vector<>();
-    private Shape shape;
+public class PolyShape {
+    private static final int INITIAL_CAPACITY = 4;     // initial number of vertices coordinates array can hold
+
+    private double[] coordinates = new double[2 * INITIAL_CAPACITY];   // x0, y0, x1, y1, ...
+    private int coordinatesSize = 0;        // number of vertices stored in coordinates
+    private double sumX = 0;                // sum of all x coordinates, used for mid point
+    private double sumY = 0;                // sum of all y coordinates, used for mid point
+    private double translateX = 0;          // how far shape was moved from its vertices
+    private double translateY = 0;
+    private Shape localShape;               // shape generated from vertices, before transformations
+    private AffineTransform transform;      // scale, rotate and translate transform, null if outdated
+    private AffineTransform inverseTransform;   // inverse of transform, null if outdated
+    private double[] edgeTable;             // polygon edges as {yMin, yMax, x at yMin, dx/dy}, null if outdated
+    private int edgeCount;                  // number of edges in edge table
+    private Shape shape;                    // drawable shape with applied transformations
+    private Rectangle2D bounds;             // bounds of drawable shape
+    private boolean localShapeDirty = true; // vertices changed since local shape was generated
+    private boolean shapeDirty = true;      // drawable shape is outdated
+    private boolean boundsDirty = true;     // bounds are outdated
+    private boolean underConstruction;      // polygon is still being created, vertices are appended to it
+    private Shape constructionShape = new PolygonUnderConstruction();  // view of vertices used while under construction
     private Color backgroundColor = new Color((new Random()).nextInt());
     private MainWindow.Mode mode;
     private final long ID;
     private double scaleTransformFactor = 1.0;
     private int rotateTransformIndex = 0;
     private boolean active = false;
+    private long zOrder = 0;                // rendering order on canvas, higher is painted later (on top)
+    private PolyShape frozen;               // snapshot of current state, null if shape changed since it was taken
 
     @Override
     public boolean equals(Object o) {
@@ -50,6 +77,32 @@ public class PolyShape implements Serializable {
         return (int) (ID ^ (ID >>> 32));
     }
 
+    /**
+     * Returns z-order of this shape. Shapes with higher z-order are painted over shapes with lower one.
+     * @return z-order
+     * @see ShapeIndex
+     */
+    public long getZOrder() {
+        return zOrder;
+    }
+
+    /**
+     * Sets z-order of this shape. Canvas is responsible for keeping it consistent with painting order.
+     * @param zOrder z-order to be set
+     */
+    void setZOrder(long zOrder) {
+        this.zOrder = zOrder;
+        frozen = null;
+    }
+
+    /**
+     * Returns distinguishing ID of this shape
+     * @return ID
+     */
+    public long getID() {
+        return ID;
+    }
+
     public boolean isActive() {
         return active;
     }
@@ -69,6 +122,7 @@ public class PolyShape implements Serializable {
      */
     public void setBackgroundColor(Color backgroundColor) {
         this.backgroundColor = backgroundColor;
+        frozen = null;
     }
 
     /**
@@ -80,9 +134,38 @@ public class PolyShape implements Serializable {
      * @see Shape
      */
     public Shape getShape() {
+        if(shapeDirty) {
+            reShape();
+        }
         return shape;
     }
 
+    /**
+     * Returns bounds of drawable shape. Bounds are cached and only shifted when shape is moved.
+     * Returned object must not be modified.
+     * @return bounds of drawable shape or null if shape is not drawable
+     * @see #getShape()
+     */
+    public Rectangle2D getBounds2D() {
+        if(boundsDirty) {
+            Shape current = getShape();
+            bounds = current != null ? current.getBounds2D() : null;
+            boundsDirty = false;
+        }
+        return bounds;
+    }
+
+    /**
+     * Marks transform and everything generated from it as outdated
+     */
+    private void invalidateTransform() {
+        frozen = null;
+        transform = null;
+        inverseTransform = null;
+        shapeDirty = true;
+        boundsDirty = true;
+    }
+
     /**
      * Returns shape's background color
      * @return shape's background color
@@ -102,59 +185,110 @@ public class PolyShape implements Serializable {
     }
 
     /**
-     * Updates scale factor. Scale factor can't be less than 0.025. Updates shape object after.
+     * Updates scale factor. Scale factor can't be less than 0.025. Marks shape object outdated after.
      * @param diff how much increase / decrease
      * @see AffineTransform
      * @see Shape
      */
     public void modifyScaleTransformFactor(double diff) {
+        finishConstruction();
         if(scaleTransformFactor+diff >= 0.025) {
             this.scaleTransformFactor += diff;
-            reShape();
+            invalidateTransform();
         }
     }
 
     /**
-     * Updates rotate index. Updates shape object after.
+     * Sets scale factor, used when replaying saved edits. Marks shape object outdated after.
+     * @param factor new scale factor
+     * @see EditJournal
+     */
+    void setScaleTransformFactor(double factor) {
+        finishConstruction();
+        this.scaleTransformFactor = factor;
+        invalidateTransform();
+    }
+
+    /**
+     * Returns index by which shape is rotated. Each index step is PI/128 radians.
+     * @return rotate transform index
+     * @see AffineTransform
+     */
+    public int getRotateTransformIndex() {
+        return rotateTransformIndex;
+    }
+
+    /**
+     * Updates rotate index. Marks shape object outdated after.
      * @param diff how much increase / decrease
      * @see AffineTransform
      * @see Shape
      */
     public void modifyRotateTransformIndex(int diff) {
+        finishConstruction();
         this.rotateTransformIndex += diff;
-        reShape();
+        invalidateTransform();
+    }
+
+    /**
+     * Sets rotate index, used when replaying saved edits. Marks shape object outdated after.
+     * @param index new rotate index
+     * @see EditJournal
+     */
+    void setRotateTransformIndex(int index) {
+        finishConstruction();
+        this.rotateTransformIndex = index;
+        invalidateTransform();
+    }
+
+    /**
+     * Returns x of central point of vertices, before shape is moved.
+     * Circles are centered at their first point.
+     * @return mid point x
+     */
+    private double getMidX() {
+        return getMode() == CREATING_CIRCLES ? coordinates[0] : sumX / coordinatesSize;
+    }
+
+    /**
+     * Returns y of central point of vertices, before shape is moved.
+     * Circles are centered at their first point.
+     * @return mid point y
+     */
+    private double getMidY() {
+        return getMode() == CREATING_CIRCLES ? coordinates[1] : sumY / coordinatesSize;
     }
 
     /**
      * Returns central point of shape.
-     * Sums all x's and divides them by their number. Same goes for y's.
+     * Average of all x's and y's is kept up to date when vertices are added, so no vertex is visited.
      * @return mid point
      */
     public Point.Double calculateMidPoint() {
-        if(getMode() == CREATING_CIRCLES) {
-            return new Point.Double(coordinates.get(0).getX(), coordinates.get(0).getY());
-        } else {
-            double sumX = 0;
-            double sumY = 0;
-            for(int i = 0; i < coordinates.size(); i++) {
-                sumX += coordinates.get(i).getX();
-                sumY += coordinates.get(i).getY();
-            }
-            return new Point.Double(sumX/coordinates.size(), sumY/coordinates.size());
-        }
+        return new Point.Double(getMidX() + translateX, getMidY() + translateY);
     }
 
     /**
      * Moves figure by x and y in a certain direction.
-     * Moves each point by the passed parameters. Simply adds value to each point.
-     * @param x adds to actual point.x value of x
-     * @param y adds to actual point.y value of y
+     * Only translation of the transform is changed, vertices stay untouched.
+     * @param x subtracts from actual point.x value of x
+     * @param y subtracts from actual point.y value of y
      */
     public void move(double x, double y) {
-        for(Point p: coordinates) {
-            p.setLocation(p.getX()-x, p.getY()-y);
+        finishConstruction();
+        frozen = null;
+        translateX -= x;
+        translateY -= y;
+        if(transform != null) {
+            transform.preConcatenate(AffineTransform.getTranslateInstance(-x, -y));
         }
-        reShape();
+        if(inverseTransform != null) {
+            inverseTransform.concatenate(AffineTransform.getTranslateInstance(x, y));
+        }
+        if(!boundsDirty && bounds != null) {
+            bounds.setRect(bounds.getX() - x, bounds.getY() - y, bounds.getWidth(), bounds.getHeight());
+        }
+        shapeDirty = true;
     }
 
     /**
@@ -163,7 +297,7 @@ public class PolyShape implements Serializable {
      * @param y point's y
      */
     public void addPointCoord(int x, int y) {
-        addPointCoord(new Point(x, y));
+        addPointCoord((double)x, (double)y);
     }
 
     /**
@@ -172,16 +306,125 @@ public class PolyShape implements Serializable {
      * @see Point
      */
     public void addPointCoord(Point p) {
-        coordinates.add(p);
-        reShape();
+        addPointCoord(p.getX(), p.getY());
+    }
+
+    /**
+     * Adds new vertice to shape (adds new coordinate).
+     * Coordinates array grows by half of its size when full.
+     * @param x point's x
+     * @param y point's y
+     */
+    public void addPointCoord(double x, double y) {
+        if(2 * coordinatesSize == coordinates.length) {
+            int capacity = coordinates.length + (coordinates.length >> 1);
+            coordinates = Arrays.copyOf(coordinates, Math.max(2 * INITIAL_CAPACITY, capacity & ~1));
+        }
+        // vertices are kept relative to translation
+        x -= translateX;
+        y -= translateY;
+        coordinates[2 * coordinatesSize] = x;
+        coordinates[2 * coordinatesSize + 1] = y;
+        coordinatesSize++;
+        sumX += x;
+        sumY += y;
+        if(underConstruction) {
+            appendToConstruction(x, y);
+        } else {
+            localShapeDirty = true;
+            edgeTable = null;
+            invalidateTransform();
+        }
+    }
+
+    /**
+     * Extends bounds of polygon under construction by newly added vertex.
+     * Polygon is drawn as a view of its vertices, so nothing else has to be regenerated.
+     * Transform of polygon under construction is always identity.
+     * @param x vertex x
+     * @param y vertex y
+     */
+    private void appendToConstruction(double x, double y) {
+        frozen = null;
+        transform = null;   // mid point changed
+        if(coordinatesSize == 1) {
+            bounds = new Rectangle2D.Double(x, y, 0, 0);
+        } else {
+            bounds.add(x, y);
+        }
+        boundsDirty = false;
+        shape = isDrawable() ? constructionShape : null;
+        shapeDirty = false;
+    }
+
+    /**
+     * Checks whether polygon is still being created
+     * @return true if vertices are still appended to the polygon, false otherwise
+     */
+    public boolean isUnderConstruction() {
+        return underConstruction;
     }
 
     /**
-     * Returns size of coordinates vector
-     * @return coordinates vector size
+     * Finishes creating polygon, its drawable shape will be generated once from all of its vertices.
+     * Called when user ends current figure, also before shape is transformed for the first time.
+     */
+    public void finishConstruction() {
+        if(underConstruction) {
+            underConstruction = false;
+            localShapeDirty = true;
+            edgeTable = null;
+            invalidateTransform();
+        }
+    }
+
+    /**
+     * Returns number of vertices
+     * @return number of vertices
      */
     public int getCoordinatesSize() {
-        return coordinates.size();
+        return coordinatesSize;
+    }
+
+    /**
+     * Estimates how many bytes of heap this shape occupies, including its coordinates array and generated shape.
+     * Assumes 64-bit JVM with compressed references.
+     * @return approximate heap footprint in bytes
+     */
+    public long estimateHeapFootprint() {
+        long bytes = 64;                                // object header and fields
+        bytes += 16 + 8L * coordinates.length;          // coordinates array
+        bytes += 32;                                    // background color
+        if(edgeTable != null) {
+            bytes += 16 + 8L * edgeTable.length;
+        }
+        if(localShape != null) {
+            bytes += 80 + 16 + 8L * 2 * (coordinatesSize + 1) + 16 + coordinatesSize + 1;
+        }
+        if(shape != null && !underConstruction) {
+            // transformed path holds (up to) 2 doubles and 1 byte per segment, curves of circles have more points
+            int segments = getMode() == CREATING_CIRCLES ? 6 : coordinatesSize + 1;
+            bytes += 80 + 16 + 8L * 6 * segments + 16 + segments;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns x coordinate of moved vertex (before scale and rotation are applied)
+     * @param index vertex index
+     * @return x coordinate
+     */
+    public double getPointX(int index) {
+        return coordinates[2 * index] + translateX;
+    }
+
+    /**
+     * Returns y coordinate of moved vertex (before scale and rotation are applied)
+     * @param index vertex index
+     * @return y coordinate
+     */
+    public double getPointY(int index) {
+        return coordinates[2 * index + 1] + translateY;
     }
 
     /**
@@ -194,80 +437,77 @@ public class PolyShape implements Serializable {
     }
 
     /**
-     * Applies transformation to current shape object. Modifies it's scale based on scale factor and rotates it by it's rotate index.
+     * Returns transformation applied to vertices. Modifies it's scale based on scale factor and rotates it by it's rotate index.
      * It's also translated (moved) to central point because otherwise scaling resulted in moving it to top left corner of canvas.
-     * @param shape shape to be transformed
-     * @return transformed shape
+     * Finally it's translated by distance the shape was moved. Transform is cached until scale, rotation or vertices change.
+     * Returned object must not be modified.
+     * @return transform from vertices to drawable shape
      * @see AffineTransform
      */
-    private Shape applyTransform(Shape shape) {
-        AffineTransform transform = new AffineTransform();
-        // Rotate by certain amount of radians around central point
-        transform.rotate(rotateTransformIndex * (Math.PI / 128), calculateMidPoint().getX(), calculateMidPoint().getY());
-        // Move to "center" in order to counter scaling moving
-        transform.translate(
-                calculateMidPoint().getX()*(1-getScaleTransformFactor()),
-                calculateMidPoint().getY()*(1-getScaleTransformFactor())
-        );
-        // Scaling
-        transform.scale(getScaleTransformFactor(), getScaleTransformFactor());
-
-        return transform.createTransformedShape(shape);
+    public AffineTransform getTransform() {
+        if(transform == null) {
+            double midX = getMidX();
+            double midY = getMidY();
+            // Move by distance shape was moved
+            transform = AffineTransform.getTranslateInstance(translateX, translateY);
+            // Rotate by certain amount of radians around central point
+            transform.rotate(rotateTransformIndex * (Math.PI / 128), midX, midY);
+            // Move to "center" in order to counter scaling moving
+            transform.translate(midX*(1-getScaleTransformFactor()), midY*(1-getScaleTransformFactor()));
+            // Scaling
+            transform.scale(getScaleTransformFactor(), getScaleTransformFactor());
+        }
+        return transform;
     }
 
     /**
      * Generates circle as a Shape based on central point and calculated radius.
-     * Has applied transformations.
      * @return generated circle from this PolyShape object
      * @see Ellipse2D
      * @see Shape
      */
     private Shape generateCircle() {
-        double x0 = coordinates.get(0).getX();
-        double y0 = coordinates.get(0).getY();
+        double x0 = coordinates[0];
+        double y0 = coordinates[1];
 
-        double x1 = coordinates.get(1).getX();
-        double y1 = coordinates.get(1).getY();
+        double x1 = coordinates[2];
+        double y1 = coordinates[3];
 
         double radius = Math.sqrt((x1-x0)*(x1-x0) + (y1-y0)*(y1-y0));
 
-        Ellipse2D circle = new Ellipse2D.Double(coordinates.get(0).getX()-(radius), coordinates.get(0).getY()-(radius), 2*radius, 2*radius);
-
-        return applyTransform(circle);
+        return new Ellipse2D.Double(x0-(radius), y0-(radius), 2*radius, 2*radius);
     }
 
     /**
      * Generates {@link GeneralPath} (polygon) as a {@link Shape} from vertices (coordinates) by connecting them with lines.
-     * Has applied transformations.
      * @return generated polygon from this PolyShape object
      * @see GeneralPath
      * @see Shape
      */
     private Shape generatePolygon() {
-        GeneralPath polygon = new GeneralPath(GeneralPath.WIND_EVEN_ODD, coordinates.size());
-        polygon.moveTo(coordinates.get(0).getX(), coordinates.get(0).getY());
+        GeneralPath polygon = new GeneralPath(GeneralPath.WIND_EVEN_ODD, coordinatesSize + 1);
+        polygon.moveTo(coordinates[0], coordinates[1]);
 
-        for (int index = 1; index < coordinates.size(); index++) {
-            polygon.lineTo(coordinates.get(index).getX(), coordinates.get(index).getY());
-        };
+        for (int index = 2; index < 2 * coordinatesSize; index += 2) {
+            polygon.lineTo(coordinates[index], coordinates[index+1]);
+        }
 
         polygon.closePath();
 
-        return applyTransform(polygon);
+        return polygon;
     }
 
     /**
      * Generates {@link Rectangle2D} as a {@link Shape} based on 2 points and calculating width and height from them.
-     * Has applied transformations.
      * @return generated rectangle from this PolyShape object
      * @see Rectangle2D
      * @see Shape
      */
     private Shape generateRectangle() {
-        double x1 = coordinates.get(0).getX();
-        double x2 = coordinates.get(1).getX();
-        double y1 = coordinates.get(0).getY();
-        double y2 = coordinates.get(1).getY();
+        double x1 = coordinates[0];
+        double x2 = coordinates[2];
+        double y1 = coordinates[1];
+        double y2 = coordinates[3];
 
         double height = y1 - y2;
         double width = x1 - x2;
@@ -276,29 +516,128 @@ public class PolyShape implements Serializable {
         height = height > 0 ? height : -height;
         width = width > 0 ? width : -width;
 
-        Rectangle2D rect = new Rectangle2D.Double( (x1 < x2 ? x1 : x2), (y1 < y2 ? y1 : y2), width, height);
-
-        return applyTransform(rect);
+        return new Rectangle2D.Double( (x1 < x2 ? x1 : x2), (y1 < y2 ? y1 : y2), width, height);
     }
 
     /**
      * Based on {@link com.geocreator.MainWindow.Mode} of this object, creates {@link Shape} and updates current figure
-     * by launching appropriate generate function. If there are not enough points - no {@link Shape} is created.
+     * by launching appropriate generate function (only if vertices changed) and applying transform to it.
+     * If there are not enough points - no {@link Shape} is created.
+     * Called lazily from {@link #getShape()}.
      */
     private void reShape() {
         if( isDrawable() ) {
-            switch(getMode()) {
-                case CREATING_POLYGONS:
-                    shape = generatePolygon();
-                    break;
-                case CREATING_CIRCLES:
-                    shape = generateCircle();
-                    break;
-                case CREATING_RECTANGLES:
-                    shape = generateRectangle();
-                    break;
+            if(localShapeDirty) {
+                switch(getMode()) {
+                    case CREATING_POLYGONS:
+                        localShape = generatePolygon();
+                        break;
+                    case CREATING_CIRCLES:
+                        localShape = generateCircle();
+                        break;
+                    case CREATING_RECTANGLES:
+                        localShape = generateRectangle();
+                        break;
+                }
+                localShapeDirty = false;
+            }
+            shape = getTransform().createTransformedShape(localShape);
+        }
+        shapeDirty = false;
+    }
+
+    /**
+     * Checks whether point lies inside of drawable shape.
+     * Points outside of cached bounds are rejected right away. Others are transformed back to vertices space
+     * and tested against circle's radius, rectangle's sides or polygon's edge table.
+     * @param x point's x
+     * @param y point's y
+     * @return true if shape is drawable and contains the point, false otherwise
+     */
+    public boolean contains(double x, double y) {
+        if(!isDrawable() || !getBounds2D().contains(x, y)) {
+            return false;
+        }
+        if(underConstruction) {
+            return constructionShape.contains(x, y);
+        }
+
+        if(inverseTransform == null) {
+            try {
+                inverseTransform = getTransform().createInverse();
+            } catch (NoninvertibleTransformException e) {
+                return getShape().contains(x, y);
+            }
+        }
+        double[] point = {x, y};
+        inverseTransform.transform(point, 0, point, 0, 1);
+        double px = point[0];
+        double py = point[1];
+
+        switch(getMode()) {
+            case CREATING_CIRCLES: {
+                double radiusSq = (coordinates[2]-coordinates[0])*(coordinates[2]-coordinates[0])
+                        + (coordinates[3]-coordinates[1])*(coordinates[3]-coordinates[1]);
+                double dx = px - coordinates[0];
+                double dy = py - coordinates[1];
+                return dx*dx + dy*dy < radiusSq;
+            }
+            case CREATING_RECTANGLES:
+                return px >= Math.min(coordinates[0], coordinates[2]) && px < Math.max(coordinates[0], coordinates[2])
+                        && py >= Math.min(coordinates[1], coordinates[3]) && py < Math.max(coordinates[1], coordinates[3]);
+            default:
+                return polygonContains(px, py);
+        }
+    }
+
+    /**
+     * Builds polygon edge table from vertices. Horizontal edges are skipped as they never cross horizontal ray.
+     */
+    private void buildEdgeTable() {
+        edgeTable = new double[4 * coordinatesSize];
+        edgeCount = 0;
+        for(int i = 0; i < coordinatesSize; i++) {
+            int j = (i + 1) % coordinatesSize;  // last vertex connects with first one
+            double x0 = coordinates[2*i];
+            double y0 = coordinates[2*i+1];
+            double x1 = coordinates[2*j];
+            double y1 = coordinates[2*j+1];
+            if(y0 == y1) {
+                continue;
+            }
+            if(y0 > y1) {
+                double t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+            int e = 4 * edgeCount++;
+            edgeTable[e] = y0;
+            edgeTable[e+1] = y1;
+            edgeTable[e+2] = x0;
+            edgeTable[e+3] = (x1 - x0) / (y1 - y0);
+        }
+    }
+
+    /**
+     * Even-odd test of point in vertices space against polygon's edge table.
+     * Counts edges crossed by a ray going from the point to the right.
+     * @param px point's x
+     * @param py point's y
+     * @return true if point lies inside of polygon
+     */
+    private boolean polygonContains(double px, double py) {
+        if(edgeTable == null) {
+            buildEdgeTable();
+        }
+        boolean inside = false;
+        for(int e = 0; e < 4 * edgeCount; e += 4) {
+            if(py >= edgeTable[e] && py < edgeTable[e+1]) {
+                double crossX = edgeTable[e+2] + (py - edgeTable[e]) * edgeTable[e+3];
+                if(px < crossX) {
+                    inside = !inside;
+                }
             }
         }
+        return inside;
     }
 
     /**
@@ -306,7 +645,7 @@ public class PolyShape implements Serializable {
      * @return true if able, false otherwise
      */
     public boolean isDrawable() {
-        if(coordinates.size() >= 2)
+        if(coordinatesSize >= 2)
             return true;
         return false;
     }
@@ -320,6 +659,201 @@ public class PolyShape implements Serializable {
     public PolyShape(long id, MainWindow.Mode m) {
         ID = id;
         mode = m;
+        underConstruction = m == CREATING_POLYGONS;
         System.out.println("[PolyShape] Created new with ID = " + ID);
     }
+
+    /**
+     * Constructor restoring complete shape, eg. read from file.
+     * @param id distinguishing ID
+     * @param m mode, the shape was created with
+     * @param backgroundColor shape's background color
+     * @param scaleTransformFactor factor by which shape is scaled
+     * @param rotateTransformIndex index by which shape is rotated
+     * @param coords vertices as consecutive x and y pairs, array is taken over by this shape
+     * @see DocumentFormat
+     */
+    PolyShape(long id, MainWindow.Mode m, Color backgroundColor, double scaleTransformFactor, int rotateTransformIndex, double[] coords) {
+        ID = id;
+        mode = m;
+        this.backgroundColor = backgroundColor;
+        this.scaleTransformFactor = scaleTransformFactor;
+        this.rotateTransformIndex = rotateTransformIndex;
+        coordinates = coords;
+        coordinatesSize = coords.length / 2;
+        for(int i = 0; i < 2 * coordinatesSize; i += 2) {
+            sumX += coords[i];
+            sumY += coords[i+1];
+        }
+    }
+
+    /**
+     * Copy constructor used by {@link #snapshot()}
+     * @param source shape to be copied
+     */
+    private PolyShape(PolyShape source) {
+        ID = source.ID;
+        mode = source.mode;
+        backgroundColor = source.backgroundColor;
+        scaleTransformFactor = source.scaleTransformFactor;
+        rotateTransformIndex = source.rotateTransformIndex;
+        zOrder = source.zOrder;
+        // vertices are only ever appended past coordinatesSize, so the part visible to the copy never changes
+        coordinates = source.coordinates;
+        coordinatesSize = source.coordinatesSize;
+        sumX = source.sumX;
+        sumY = source.sumY;
+        translateX = source.translateX;
+        translateY = source.translateY;
+        // generated shapes are never modified once built, transform and bounds are
+        if(!source.underConstruction && !source.localShapeDirty) {
+            localShape = source.localShape;
+            localShapeDirty = false;
+            if(!source.shapeDirty) {
+                shape = source.shape;
+                shapeDirty = false;
+            }
+            if(!source.boundsDirty && source.bounds != null) {
+                bounds = (Rectangle2D)source.bounds.clone();
+                boundsDirty = false;
+            }
+            if(source.transform != null) {
+                transform = (AffineTransform)source.transform.clone();
+            }
+        }
+    }
+
+    /**
+     * Creates cheap copy of this shape that can be read from another thread while this shape is still being edited.
+     * Vertices array is shared, already generated geometry is reused. Copy is never active nor under construction.
+     * @return independent copy of shape
+     */
+    public PolyShape snapshot() {
+        return new PolyShape(this);
+    }
+
+    /**
+     * Returns snapshot of this shape (see {@link #snapshot()}) that is reused until the shape changes, so scene versions
+     * taken one after another share snapshots of all shapes that did not change. Must be called on the thread
+     * that changes the shape.
+     * @return snapshot of current state, never changed afterwards
+     * @see Scene
+     */
+    public PolyShape freeze() {
+        if(frozen == null) {
+            frozen = snapshot();
+        }
+        return frozen;
+    }
+
+    /**
+     * Closed polygon drawn directly from vertices of {@link PolyShape} that is still under construction.
+     * Nothing is copied when vertex is added, path iterator walks the vertices array and closes the polygon at the end.
+     * @see PolyShape#finishConstruction()
+     */
+    private class PolygonUnderConstruction implements Shape {
+        @Override
+        public Rectangle getBounds() {
+            return getBounds2D().getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return (Rectangle2D)bounds.clone();
+        }
+
+        @Override
+        public boolean contains(double x, double y) {
+            return Path2D.contains(getPathIterator(null), x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return contains(p.getX(), p.getY());
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return Path2D.intersects(getPathIterator(null), x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return Path2D.contains(getPathIterator(null), x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at) {
+            return new VerticesPathIterator(at);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return new VerticesPathIterator(at);   // only straight lines, already flat
+        }
+    }
+
+    /**
+     * Iterates vertices as move to first vertex, lines to next ones and closing segment.
+     */
+    private class VerticesPathIterator implements PathIterator {
+        private final AffineTransform at;
+        private final int size = coordinatesSize;
+        private int index = 0;
+
+        VerticesPathIterator(AffineTransform at) {
+            this.at = at;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_EVEN_ODD;
+        }
+
+        @Override
+        public boolean isDone() {
+            return index > size;
+        }
+
+        @Override
+        public void next() {
+            index++;
+        }
+
+        @Override
+        public int currentSegment(float[] coords) {
+            if(index == size) {
+                return SEG_CLOSE;
+            }
+            coords[0] = (float)coordinates[2 * index];
+            coords[1] = (float)coordinates[2 * index + 1];
+            if(at != null) {
+                at.transform(coords, 0, coords, 0, 1);
+            }
+            return index == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        @Override
+        public int currentSegment(double[] coords) {
+            if(index == size) {
+                return SEG_CLOSE;
+            }
+            coords[0] = coordinates[2 * index];
+            coords[1] = coordinates[2 * index + 1];
+            if(at != null) {
+                at.transform(coords, 0, coords, 0, 1);
+            }
+            return index == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
 }
@@ -103,7 +103,6 @@ public class PopupShapeEditMenu extends JPopupMenu implements ChangeListener {
     @Override
     public void stateChanged(ChangeEvent changeEvent) {
         submenuColorPicker.setBackground(jcc.getColor());
-        outerWindow.cvs.getActualPolyShape().setBackgroundColor(jcc.getColor());
-        outerWindow.cvs.repaint();
+        outerWindow.cvs.setPolyShapeColor(outerWindow.cvs.getActualPolyShape(), jcc.getColor());
     }
 }
@@ -0,0 +1,21 @@
+package com.geocreator;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Receives progress of long running operation, eg. saving or exporting in background.
+ * Also the point where operation learns it was cancelled.
+ * @see BackgroundOperation
+ */
+public interface ProgressListener {
+    // listener for operations nobody watches
+    ProgressListener NONE = (done, total) -> { };
+
+    /**
+     * Reports how much work is done
+     * @param done units of work done so far
+     * @param total units of work in total
+     * @throws InterruptedIOException if operation was cancelled and has to stop
+     */
+    void progress(long done, long total) throws InterruptedIOException;
+}
@@ -0,0 +1,22 @@
+package com.geocreator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Event fired to redo last undone change of shapes on canvas. Logs that action in terminal.
+ * @see GeometricCanvas
+ * @see UndoHistory
+ */
+public class RedoEvent implements ActionListener {
+    private MainWindow outerWindow;
+
+    public RedoEvent(MainWindow mw) {
+        this.outerWindow = mw;
+    }
+
+    public void actionPerformed(ActionEvent actionEvent) {
+        System.out.println("[Event] " + this.getClass().getSimpleName());
+        outerWindow.cvs.redo();
+    }
+}
@@ -7,10 +7,11 @@ import java.io.IOException;
 
 /**
  * Event fired to choose an existing (overwrite) or new file (create)
- * to save data from GeometricCanvas.
+ * to save data from GeometricCanvas. File is written in background from snapshot of canvas.
  * @see GeometricCanvas
  * @see GeometricCanvasSavedState
  * @see JFileChooser
+ * @see BackgroundOperation
  */
 public class SaveFileAsEvent implements ActionListener {
     private MainWindow outerWindow;
@@ -20,18 +21,23 @@ public class SaveFileAsEvent implements ActionListener {
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
+        if(outerWindow.cvs.isLoading()) {
+            JOptionPane.showMessageDialog(outerWindow, "Document is still being loaded.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         try {
             JFileChooser fc = new JFileChooser();
             int returnVal = fc.showSaveDialog(outerWindow);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 String path = fc.getSelectedFile().getPath();
-                outerWindow.cvs.saveStateToFile(path);
-                outerWindow.setCurrentFile(path);
+                new BackgroundOperation(outerWindow, "Saving " + path, "File saved sucessfully.", "File save failed.",
+                        outerWindow.cvs.prepareSaveStateToFile(path), () -> {
+                            outerWindow.setCurrentFile(path);
+                            outerWindow.setNewFileFlag(false);
+                        }).start();
             } else {
                 throw new IOException("No file approved.");
             }
-            outerWindow.setNewFileFlag(false);
-            JOptionPane.showMessageDialog(outerWindow, "File saved sucessfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "File save failed.", "Error", JOptionPane.ERROR_MESSAGE);
         }
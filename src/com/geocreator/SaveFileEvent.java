@@ -8,9 +8,11 @@ import java.io.IOException;
 /**
  * Event fired update (overwrite) current active file that has been saved before.
  * If file hasn't been saved yet (eg. new file) it will show dialog to choose file where to save it.
+ * File is written in background from snapshot of canvas, so user can keep editing meanwhile.
  * @see GeometricCanvas
  * @see GeometricCanvasSavedState
  * @see JFileChooser
+ * @see BackgroundOperation
  */
 public class SaveFileEvent implements ActionListener {
     private MainWindow outerWindow;
@@ -20,6 +22,10 @@ public class SaveFileEvent implements ActionListener {
     }
 
     public void actionPerformed(ActionEvent actionEvent) {
+        if(outerWindow.cvs.isLoading()) {
+            JOptionPane.showMessageDialog(outerWindow, "Document is still being loaded.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         try {
             String path = outerWindow.getCurrentFile();
             if(outerWindow.isNewFileFlag()) {
@@ -31,10 +37,12 @@ public class SaveFileEvent implements ActionListener {
                     throw new IOException("No file approved.");
                 }
             }
-            outerWindow.cvs.saveStateToFile(path);
-            outerWindow.setCurrentFile(path);
-            outerWindow.setNewFileFlag(false);
-            JOptionPane.showMessageDialog(outerWindow, "File saved sucessfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            String savedPath = path;
+            new BackgroundOperation(outerWindow, "Saving " + path, "File saved sucessfully.", "File save failed.",
+                    outerWindow.cvs.prepareSaveStateToFile(path), () -> {
+                        outerWindow.setCurrentFile(savedPath);
+                        outerWindow.setNewFileFlag(false);
+                    }).start();
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "File save failed.", "Error", JOptionPane.ERROR_MESSAGE);
         }
@@ -0,0 +1,171 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Immutable version of what {@link GeometricCanvas} shows - frozen shapes in painting order (see {@link PolyShape#freeze()}),
+ * live shape, background, size of the canvas and its {@link Viewport}. Versions taken one after another share snapshots of shapes that did
+ * not change, so taking a version only costs a reference per shape.<br>
+ * Versions are handed over to {@link SceneRenderer} which rasterizes them on its own thread.
+ * @see SceneRenderer
+ * @see GeometricCanvas
+ */
+public class Scene {
+    final PolyShape[] shapes;       // snapshots of shapes in painting order
+    final int liveIndex;            // position of live (actual) shape in shapes, -1 if there is none
+    final boolean highlightLive;    // true if live shape has its border highlighted
+    final Color background;
+    final int width;                // logical size of canvas
+    final int height;
+    final double scaleX;            // device transform scale, eg. HiDPI scaling
+    final double scaleY;
+    final Viewport view;            // zoom and pan of canvas
+
+    /**
+     * Takes version of canvas. Must be called on the thread that changes the shapes.
+     * @param polyShapes shapes in painting order
+     * @param live live (actual) shape or null
+     * @param highlightLive true if live shape has its border highlighted
+     * @param background canvas background
+     * @param width logical width of canvas
+     * @param height logical height of canvas
+     * @param scaleX device scale along x
+     * @param scaleY device scale along y
+     * @param view zoom and pan of canvas
+     */
+    Scene(ZOrderList polyShapes, PolyShape live, boolean highlightLive, Color background, int width, int height,
+          double scaleX, double scaleY, Viewport view) {
+        shapes = new PolyShape[polyShapes.size()];
+        int position = 0;
+        int found = -1;
+        for(PolyShape pls : polyShapes) {
+            if(pls == live) {
+                found = position;
+            }
+            shapes[position++] = pls.freeze();
+        }
+        this.liveIndex = found;
+        this.highlightLive = highlightLive && found >= 0;
+        this.background = background;
+        this.width = width;
+        this.height = height;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.view = view;
+    }
+
+    /**
+     * Returns snapshot of live shape
+     * @return live shape or null if there is none
+     */
+    PolyShape getLive() {
+        return liveIndex >= 0 ? shapes[liveIndex] : null;
+    }
+
+    /**
+     * Returns width of rasterized scene in device pixels
+     * @return device width
+     */
+    int getDeviceWidth() {
+        return (int)Math.ceil(width * scaleX);
+    }
+
+    /**
+     * Returns height of rasterized scene in device pixels
+     * @return device height
+     */
+    int getDeviceHeight() {
+        return (int)Math.ceil(height * scaleY);
+    }
+
+    /**
+     * Returns device pixel at which world origin would be shown, negated. It is rounded, so rasters of the same zoom level
+     * (see {@link TileCache}) line up with device pixels.
+     * @return negated device x of world origin
+     */
+    long getDeviceOriginX() {
+        return Math.round(view.getOffsetX() * scaleX);
+    }
+
+    /**
+     * Returns device pixel at which world origin would be shown, negated
+     * @return negated device y of world origin
+     * @see #getDeviceOriginX()
+     */
+    long getDeviceOriginY() {
+        return Math.round(view.getOffsetY() * scaleY);
+    }
+
+    /**
+     * Returns transform from world to device coordinates of rasterized scene
+     * @return device transform of view
+     */
+    AffineTransform getDeviceTransform() {
+        double zoom = view.getZoom();
+        return new AffineTransform(zoom * scaleX, 0, 0, zoom * scaleY, -getDeviceOriginX(), -getDeviceOriginY());
+    }
+
+    /**
+     * Returns transform from world to canvas coordinates, which together with device scale gives {@link #getDeviceTransform()}
+     * @return view transform
+     */
+    AffineTransform getViewTransform() {
+        double zoom = view.getZoom();
+        return new AffineTransform(zoom, 0, 0, zoom, -getDeviceOriginX() / scaleX, -getDeviceOriginY() / scaleY);
+    }
+
+    /**
+     * Checks whether version shows canvas with specified settings, shapes are not compared
+     * @param highlightLive true if live shape has its border highlighted
+     * @param background canvas background
+     * @param width logical width of canvas
+     * @param height logical height of canvas
+     * @param scaleX device scale along x
+     * @param scaleY device scale along y
+     * @param view zoom and pan of canvas
+     * @return true if all settings are the same
+     */
+    boolean shows(boolean highlightLive, Color background, int width, int height, double scaleX, double scaleY, Viewport view) {
+        return this.highlightLive == (highlightLive && liveIndex >= 0) && this.width == width && this.height == height
+                && this.scaleX == scaleX && this.scaleY == scaleY && this.background.equals(background) && this.view.equals(view);
+    }
+
+    /**
+     * Checks whether both versions look the same
+     * @param other other version or null
+     * @return true if nothing changed between versions
+     */
+    boolean looksLike(Scene other) {
+        return other != null && highlightLive == other.highlightLive && sameAround(other, -1) && liveIndex == other.liveIndex;
+    }
+
+    /**
+     * Checks whether versions only differ by their live shape, so layers of other shapes (see {@link LayerCache})
+     * can be reused
+     * @param other other version or null
+     * @return true if all shapes except live one are the same
+     */
+    boolean sameAroundLive(Scene other) {
+        return other != null && liveIndex >= 0 && liveIndex == other.liveIndex && sameAround(other, liveIndex);
+    }
+
+    /**
+     * Compares canvas and all shapes except the one at specified position
+     * @param other other version
+     * @param skipped position of shape not compared, -1 to compare all
+     * @return true if they are the same
+     */
+    private boolean sameAround(Scene other, int skipped) {
+        if(shapes.length != other.shapes.length || width != other.width || height != other.height
+                || scaleX != other.scaleX || scaleY != other.scaleY || !background.equals(other.background) || !view.equals(other.view)) {
+            return false;
+        }
+        for(int i = 0; i < shapes.length; i++) {
+            if(shapes[i] != other.shapes[i] && i != skipped) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
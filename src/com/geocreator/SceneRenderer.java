@@ -0,0 +1,158 @@
+package com.geocreator;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rasterizes {@link Scene} versions published by {@link GeometricCanvas} on its own thread, so Event Dispatch Thread
+ * only blits finished frames and keeps handling input while a big scene is being rendered.<br>
+ * Only the latest published version is rendered, versions published while a frame is being rendered are skipped.
+ * Frame is rendered into a back buffer and swapped with the front one when complete, then canvas is repainted.
+ * While only the live shape changes (eg. it is dragged), other shapes are reused from {@link LayerCache}, otherwise
+ * frames are composed of tiles cached by {@link TileCache}, so panning and zooming back only render newly shown tiles.<br>
+ * Render thread is started with the first published version and can be turned off with {@code -Dgeocreator.renderThread=false}.
+ * @see Scene
+ * @see GeometricCanvas
+ */
+public class SceneRenderer implements Runnable {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("geocreator.renderThread", "true"));
+
+    private final JComponent target;                                // repainted when frame is ready
+    private final boolean layersEnabled;                            // reuse layers around live shape
+    private final AtomicReference<Scene> latest = new AtomicReference<>();  // latest published version
+    private final Object published = new Object();                  // notified when version is published
+    private Thread thread;
+
+    // front buffer, guarded by frameLock
+    private final Object frameLock = new Object();
+    private BufferedImage frontImage;
+    private Scene frontScene;
+
+    // used only by render thread
+    private BufferedImage backImage;
+    private LayerCache layerCache = new LayerCache();
+    private Scene layered;      // version layers were built from
+    private Scene previous;     // version rendered last
+    private TileCache tileCache = new TileCache();
+    private volatile int skippedShapes;     // shapes outside of rasterized area skipped by latest rasterization
+
+    /**
+     * Creates renderer, its thread is not started until a version is published
+     * @param target component repainted when new frame is ready
+     * @param layersEnabled true to reuse layers of shapes around live shape, see {@link LayerCache}
+     */
+    public SceneRenderer(JComponent target, boolean layersEnabled) {
+        this.target = target;
+        this.layersEnabled = layersEnabled;
+    }
+
+    /**
+     * Hands version over to render thread, unless it looks like the latest published one
+     * @param scene new version
+     */
+    public void publish(Scene scene) {
+        if(scene.looksLike(latest.get())) {
+            return;
+        }
+        latest.set(scene);
+        synchronized(published) {
+            if(thread == null) {
+                thread = new Thread(this, "GeoCreator Render");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            published.notify();
+        }
+    }
+
+    /**
+     * Blits latest finished frame, it might be a version or a few behind the published one
+     * @param g2d graphics of canvas
+     * @return false if no frame was finished yet
+     */
+    public boolean paint(Graphics2D g2d) {
+        synchronized(frameLock) {
+            if(frontImage == null) {
+                return false;
+            }
+            g2d.drawImage(frontImage, 0, 0, frontScene.width, frontScene.height, null);
+            return true;
+        }
+    }
+
+    /**
+     * Returns number of shapes skipped by latest rasterization of shapes because they lie outside of rasterized area -
+     * canvas when layers are built, tiles that were not cached when frame is composed of tiles.
+     * Frames painted over layers built earlier report shapes skipped while the layers were built.
+     * @return number of skipped shapes
+     */
+    public int getSkippedShapeCount() {
+        return skippedShapes;
+    }
+
+    /**
+     * Renders published versions until the application ends
+     */
+    @Override
+    public void run() {
+        Scene rendered = null;
+        while(true) {
+            Scene scene;
+            synchronized(published) {
+                while((scene = latest.get()) == rendered) {
+                    try {
+                        published.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            render(scene);
+            rendered = scene;
+            target.repaint();
+            long millis = (System.nanoTime() - start) / 1000000;
+            if(millis > 250) {
+                System.out.println("[SceneRenderer] Rendered " + scene.shapes.length + " shapes in " + millis + " ms, " + tileCache.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * Rasterizes version into back buffer and swaps it with the front one
+     * @param scene version
+     */
+    private void render(Scene scene) {
+        int deviceWidth = Math.max(1, scene.getDeviceWidth());
+        int deviceHeight = Math.max(1, scene.getDeviceHeight());
+        if(backImage == null || backImage.getWidth() != deviceWidth || backImage.getHeight() != deviceHeight) {
+            backImage = new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g2d = backImage.createGraphics();
+        PolyShape live = scene.getLive();
+        boolean layersValid = scene.sameAroundLive(layered) && layerCache.isValidFor(layered.getLive(), deviceWidth, deviceHeight);
+        // layers are worth building once only the live shape changes, eg. it starts being dragged
+        if(layersEnabled && live != null && (layersValid || scene.sameAroundLive(previous))) {
+            if(!layersValid) {
+                skippedShapes = layerCache.rebuild(Arrays.asList(scene.shapes), live, scene.background, scene.getDeviceTransform(), deviceWidth, deviceHeight);
+                layered = scene;
+            }
+            g2d.scale(scene.scaleX, scene.scaleY);
+            layerCache.paint(g2d, live, scene.highlightLive, scene.width, scene.height, scene.getViewTransform());
+        } else {
+            skippedShapes = tileCache.paint(g2d, scene, deviceWidth, deviceHeight);
+        }
+        g2d.dispose();
+        previous = scene;
+
+        synchronized(frameLock) {
+            BufferedImage retired = frontImage;
+            frontImage = backImage;
+            frontScene = scene;
+            backImage = retired;
+        }
+    }
+}
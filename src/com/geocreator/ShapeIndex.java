@@ -0,0 +1,147 @@
+package com.geocreator;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Uniform grid spatial index over {@link PolyShape} objects drawn on {@link GeometricCanvas}.<br>
+ * Every drawable shape is registered in all grid cells its transformed bounds overlap, so finding
+ * the shape under a point only has to look at the few shapes sharing that point's cell instead of the whole scene.<br>
+ * Shapes whose bounds would cover too many cells are kept on a separate list that is checked on every query.<br>
+ * Index has to be told about every change of shape geometry (see {@link #update(PolyShape)}), it does not observe shapes on its own.
+ * @see PolyShape
+ * @see GeometricCanvas
+ */
+public class ShapeIndex {
+    private static final int CELL_SIZE = 64;              // width and height of a single grid cell in pixels
+    private static final int MAX_CELLS_PER_SHAPE = 4096;  // shapes covering more cells go to oversized list
+
+    private HashMap<Long, ArrayList<PolyShape>> cells = new HashMap<>();    // grid cell key -> shapes overlapping it
+    private HashMap<PolyShape, int[]> indexedRanges = new HashMap<>();      // shape -> {minCol, minRow, maxCol, maxRow} it is registered in
+    private ArrayList<PolyShape> oversized = new ArrayList<>();             // shapes too big to be put into grid
+
+    /**
+     * Packs cell column and row into a single map key
+     * @param col cell column
+     * @param row cell row
+     * @return cell key
+     */
+    private static long cellKey(int col, int row) {
+        return ((long)col << 32) ^ (row & 0xffffffffL);
+    }
+
+    /**
+     * Returns grid column or row containing given coordinate
+     * @param coord x or y coordinate
+     * @return column or row number
+     */
+    private static int cellOf(double coord) {
+        return (int)Math.floor(coord / CELL_SIZE);
+    }
+
+    /**
+     * Registers shape in index or refreshes its position after it was moved, scaled, rotated or got new vertex.
+     * Shapes that are not drawable are only removed from index.
+     * @param pls shape to be (re)indexed
+     */
+    public void update(PolyShape pls) {
+        remove(pls);
+        if(!pls.isDrawable()) {
+            return;
+        }
+
+        Rectangle2D bounds = pls.getBounds2D();
+        int[] range = {
+                cellOf(bounds.getMinX()), cellOf(bounds.getMinY()),
+                cellOf(bounds.getMaxX()), cellOf(bounds.getMaxY())
+        };
+        indexedRanges.put(pls, range);
+
+        long cellCount = (long)(range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+        if(cellCount > MAX_CELLS_PER_SHAPE) {
+            oversized.add(pls);
+            return;
+        }
+        for(int col = range[0]; col <= range[2]; col++) {
+            for(int row = range[1]; row <= range[3]; row++) {
+                cells.computeIfAbsent(cellKey(col, row), k -> new ArrayList<>()).add(pls);
+            }
+        }
+    }
+
+    /**
+     * Removes shape from index. Does nothing if shape was not indexed.
+     * @param pls shape to be removed
+     */
+    public void remove(PolyShape pls) {
+        int[] range = indexedRanges.remove(pls);
+        if(range == null) {
+            return;
+        }
+
+        long cellCount = (long)(range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+        if(cellCount > MAX_CELLS_PER_SHAPE) {
+            oversized.remove(pls);
+            return;
+        }
+        for(int col = range[0]; col <= range[2]; col++) {
+            for(int row = range[1]; row <= range[3]; row++) {
+                long key = cellKey(col, row);
+                ArrayList<PolyShape> cell = cells.get(key);
+                if(cell != null) {
+                    cell.remove(pls);
+                    if(cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all shapes from index
+     */
+    public void clear() {
+        cells.clear();
+        indexedRanges.clear();
+        oversized.clear();
+    }
+
+    /**
+     * Finds shape that is rendered on top at specified point.
+     * Out of all indexed shapes containing the point, the one with highest z-order wins.
+     * @param point point on canvas
+     * @return topmost shape containing the point or null if there is none
+     * @see PolyShape#getZOrder()
+     */
+    public PolyShape topmostAt(Point2D point) {
+        PolyShape topmost = null;
+        ArrayList<PolyShape> cell = cells.get(cellKey(cellOf(point.getX()), cellOf(point.getY())));
+        if(cell != null) {
+            topmost = topmostOf(cell, point, null);
+        }
+        return topmostOf(oversized, point, topmost);
+    }
+
+    /**
+     * Picks shape with highest z-order out of candidates containing specified point
+     * @param candidates shapes to check
+     * @param point point on canvas
+     * @param topmost best shape found so far or null
+     * @return best shape found
+     */
+    private static PolyShape topmostOf(ArrayList<PolyShape> candidates, Point2D point, PolyShape topmost) {
+        for(int i = 0; i < candidates.size(); i++) {
+            PolyShape pls = candidates.get(i);
+            if(topmost != null && pls.getZOrder() < topmost.getZOrder()) {
+                continue;
+            }
+            if(pls.contains(point.getX(), point.getY())) {
+                topmost = pls;
+            }
+        }
+        return topmost;
+    }
+}
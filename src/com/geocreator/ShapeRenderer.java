@@ -0,0 +1,90 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Paints {@link PolyShape} objects onto any {@link Graphics2D} - canvas, off-screen images or exported files.
+ * Each shape is filled with its background color and has its border drawn. Highlighted (active) shape
+ * has its border coloured green and widened. Shapes that lie outside of painted clip area can be skipped.
+ * @see PolyShape
+ * @see GeometricCanvas
+ */
+public class ShapeRenderer {
+    // width of border drawn around highlighted shape
+    public static final int ACTIVE_BORDER_WIDTH = 5;
+
+    // widened border of shape may be painted this far outside of its bounds, in world units
+    static final double BORDER_MARGIN = ACTIVE_BORDER_WIDTH / 2.0 + 1;
+
+    private static final Stroke ACTIVE_BORDER_STROKE = new BasicStroke(ACTIVE_BORDER_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Stroke BORDER_STROKE = new BasicStroke();
+    private static final Color ACTIVE_BORDER_COLOR = new Color(0,196,0);
+    private static final Color BORDER_COLOR = new Color(0);
+
+    /**
+     * Paints single shape if it is drawable
+     * @param g2d graphics to paint on
+     * @param pls shape to be painted
+     * @param highlighted true if border should be widened and coloured green
+     */
+    public static void paintShape(Graphics2D g2d, PolyShape pls, boolean highlighted) {
+        if(!pls.isDrawable()) {
+            return;
+        }
+        Shape shape = pls.getShape();
+
+        //set background color
+        g2d.setPaint(pls.getBackGroundColor());
+        g2d.fill(shape);
+
+        // set border lines color to bold if its active
+        if(highlighted) {
+            g2d.setStroke(ACTIVE_BORDER_STROKE);
+            g2d.setColor(ACTIVE_BORDER_COLOR);
+        } else {
+            g2d.setColor(BORDER_COLOR);
+        }
+        g2d.draw(shape);
+        g2d.setStroke(BORDER_STROKE);
+    }
+
+    /**
+     * Paints single shape if it is drawable and it may reach clip area
+     * @param g2d graphics to paint on
+     * @param pls shape to be painted
+     * @param highlighted true if border should be widened and coloured green
+     * @param clip clip bounds of g2d in its user space (see {@link Graphics#getClipBounds()}), null if it is not clipped
+     * @return false if shape was skipped because it lies outside of clip area
+     */
+    public static boolean paintShape(Graphics2D g2d, PolyShape pls, boolean highlighted, Rectangle clip) {
+        if(clip != null && pls.isDrawable() && !reaches(pls, clip)) {
+            return false;
+        }
+        paintShape(g2d, pls, highlighted);
+        return true;
+    }
+
+    /**
+     * Checks whether painted shape may cover any part of area, using bounds cached by shape
+     * @param pls drawable shape
+     * @param area area in coordinates of canvas
+     * @return true if area intersects bounds of shape widened by its border
+     */
+    public static boolean reaches(PolyShape pls, Rectangle2D area) {
+        Rectangle2D bounds = pls.getBounds2D();
+        return bounds.getMaxX() + BORDER_MARGIN >= area.getMinX() && bounds.getMinX() - BORDER_MARGIN <= area.getMaxX()
+                && bounds.getMaxY() + BORDER_MARGIN >= area.getMinY() && bounds.getMinY() - BORDER_MARGIN <= area.getMaxY();
+    }
+
+    /**
+     * Paints all shapes in painting order, none of them highlighted
+     * @param g2d graphics to paint on
+     * @param shapes shapes to be painted
+     */
+    public static void paintShapes(Graphics2D g2d, Iterable<PolyShape> shapes) {
+        for(PolyShape pls : shapes) {
+            paintShape(g2d, pls, false);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pyramid of rasterized tiles of the drawing, one grid of {@value #TILE_SIZE} x {@value #TILE_SIZE} device pixel tiles
+ * per {@link Viewport} zoom level. Frames of {@link Scene} versions are composed of cached tiles, so panning only blits
+ * them and only tiles that become visible are rendered. Zooming back to a level renders what was evicted since.<br>
+ * Tiles stay cached until they take more than {@code geocreator.tileCacheMB} (64 by default) megabytes,
+ * when least recently used tiles are evicted. Tiles covering shapes that changed between versions are dropped,
+ * other tiles are kept. Missing tiles of a frame are rendered on all cores, see {@link BandedRenderer#ENABLED}.<br>
+ * Cache is used only by the render thread.
+ * @see SceneRenderer
+ * @see Viewport
+ */
+public class TileCache {
+    public static final int TILE_SIZE = 256;
+    public static final long BUDGET_BYTES = Long.getLong("geocreator.tileCacheMB", 64) << 20;
+
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    private static final int MAX_CHANGED = 256;     // more changed shapes drop all tiles
+    private static final double PIXEL_MARGIN = 1;     // device pixels touched by antialiased edge outside of its shape
+
+    /**
+     * Position of tile in pyramid
+     */
+    static class Key {
+        final int level;        // zoom level
+        final long x;           // column, tile covers device pixels from x * TILE_SIZE at its zoom level
+        final long y;           // row
+
+        Key(int level, long x, long y) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return level == key.level && x == key.x && y == key.y;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = level;
+            result = 31 * result + (int) (x ^ (x >>> 32));
+            result = 31 * result + (int) (y ^ (y >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * Renders missing tiles of a frame, splitting them between tasks
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Scene scene;
+        private List<Key> keys;
+        private BufferedImage[] images;
+        private int[][] tileShapes;     // positions of shapes reaching each tile, in painting order
+        private int[] tileSizes;        // number of positions used in tileShapes
+        private int from;
+        private int to;
+
+        TileTask(Scene scene, List<Key> keys, BufferedImage[] images, int[][] tileShapes, int[] tileSizes, int from, int to) {
+            this.scene = scene;
+            this.keys = keys;
+            this.images = images;
+            this.tileShapes = tileShapes;
+            this.tileSizes = tileSizes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                renderTile(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(scene, keys, images, tileShapes, tileSizes, from, mid),
+                    new TileTask(scene, keys, images, tileShapes, tileSizes, mid, to));
+        }
+
+        /**
+         * Paints shapes reaching tile into its image
+         * @param tile position of tile in keys
+         */
+        private void renderTile(int tile) {
+            Key key = keys.get(tile);
+            double zoom = Viewport.zoomOf(key.level);
+            PolyShape highlighted = scene.highlightLive ? scene.getLive() : null;
+            Graphics2D g2d = images[tile].createGraphics();
+            g2d.setColor(scene.background);
+            g2d.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            g2d.transform(new AffineTransform(zoom * scene.scaleX, 0, 0, zoom * scene.scaleY,
+                    -(double)key.x * TILE_SIZE, -(double)key.y * TILE_SIZE));
+            int[] positions = tileShapes[tile];
+            for(int i = 0; i < tileSizes[tile]; i++) {
+                PolyShape pls = scene.shapes[positions[i]];
+                ShapeRenderer.paintShape(g2d, pls, pls == highlighted);
+            }
+            g2d.dispose();
+        }
+    }
+
+    private LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private Scene tiled;                // version cached tiles show
+    private long rendered = 0;
+    private long blitted = 0;
+    private long evictions = 0;
+
+    /**
+     * Composes frame of version out of tiles of its zoom level, rendering tiles that are not cached
+     * @param g2d graphics of frame in device pixels
+     * @param scene version
+     * @param deviceWidth frame width
+     * @param deviceHeight frame height
+     * @return number of shapes not rasterized for this frame because they are outside of rendered tiles
+     */
+    public int paint(Graphics2D g2d, Scene scene, int deviceWidth, int deviceHeight) {
+        update(scene);
+        int level = scene.view.getLevel();
+        long originX = scene.getDeviceOriginX();
+        long originY = scene.getDeviceOriginY();
+        long firstColumn = Math.floorDiv(originX, TILE_SIZE);
+        long firstRow = Math.floorDiv(originY, TILE_SIZE);
+        int columns = (int)(Math.floorDiv(originX + deviceWidth - 1, TILE_SIZE) - firstColumn + 1);
+        int rows = (int)(Math.floorDiv(originY + deviceHeight - 1, TILE_SIZE) - firstRow + 1);
+
+        List<Key> missing = new ArrayList<>();
+        int[] slots = new int[columns * rows];  // position of visible tile in missing, -1 if it is cached
+        for(int row = 0; row < rows; row++) {
+            for(int column = 0; column < columns; column++) {
+                Key key = new Key(level, firstColumn + column, firstRow + row);
+                if(tiles.containsKey(key)) {
+                    slots[row * columns + column] = -1;
+                } else {
+                    slots[row * columns + column] = missing.size();
+                    missing.add(key);
+                }
+            }
+        }
+        int skipped = missing.isEmpty() ? scene.shapes.length : render(scene, missing, slots, firstColumn, firstRow, columns, rows);
+
+        for(int row = 0; row < rows; row++) {
+            for(int column = 0; column < columns; column++) {
+                Key key = new Key(level, firstColumn + column, firstRow + row);
+                g2d.drawImage(tiles.get(key), (int)(key.x * TILE_SIZE - originX), (int)(key.y * TILE_SIZE - originY), null);
+                blitted++;
+            }
+        }
+
+        // tiles of this frame are the most recently used, they go last
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while(tiles.size() * TILE_BYTES > BUDGET_BYTES && tiles.size() > columns * rows && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Renders missing visible tiles and caches them
+     * @param scene version
+     * @param missing keys of missing tiles
+     * @param slots position in missing of every visible tile, -1 for cached tiles
+     * @param firstColumn column of first visible tile
+     * @param firstRow row of first visible tile
+     * @param columns number of visible columns
+     * @param rows number of visible rows
+     * @return number of shapes that don't reach any missing tile
+     */
+    private int render(Scene scene, List<Key> missing, int[] slots, long firstColumn, long firstRow, int columns, int rows) {
+        double levelScaleX = scene.view.getZoom() * scene.scaleX;
+        double levelScaleY = scene.view.getZoom() * scene.scaleY;
+        double margin = ShapeRenderer.BORDER_MARGIN;
+        int[][] tileShapes = new int[missing.size()][];
+        int[] tileSizes = new int[missing.size()];
+        for(int tile = 0; tile < tileShapes.length; tile++) {
+            tileShapes[tile] = new int[16];
+        }
+
+        int skipped = 0;
+        for(int i = 0; i < scene.shapes.length; i++) {
+            PolyShape pls = scene.shapes[i];
+            if(!pls.isDrawable()) {
+                continue;
+            }
+            Rectangle2D bounds = pls.getBounds2D();
+            long left = Math.max(firstColumn, tileOf((bounds.getMinX() - margin) * levelScaleX - PIXEL_MARGIN));
+            long right = Math.min(firstColumn + columns - 1, tileOf((bounds.getMaxX() + margin) * levelScaleX + PIXEL_MARGIN));
+            long top = Math.max(firstRow, tileOf((bounds.getMinY() - margin) * levelScaleY - PIXEL_MARGIN));
+            long bottom = Math.min(firstRow + rows - 1, tileOf((bounds.getMaxY() + margin) * levelScaleY + PIXEL_MARGIN));
+            boolean reached = false;
+            for(long row = top; row <= bottom; row++) {
+                for(long column = left; column <= right; column++) {
+                    int tile = slots[(int)(row - firstRow) * columns + (int)(column - firstColumn)];
+                    if(tile < 0) {
+                        continue;
+                    }
+                    if(tileSizes[tile] == tileShapes[tile].length) {
+                        tileShapes[tile] = Arrays.copyOf(tileShapes[tile], tileSizes[tile] * 2);
+                    }
+                    tileShapes[tile][tileSizes[tile]++] = i;
+                    reached = true;
+                }
+            }
+            if(!reached) {
+                skipped++;
+            }
+        }
+
+        BufferedImage[] images = new BufferedImage[missing.size()];
+        for(int tile = 0; tile < images.length; tile++) {
+            images[tile] = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        }
+        TileTask task = new TileTask(scene, missing, images, tileShapes, tileSizes, 0, images.length);
+        if(BandedRenderer.ENABLED && images.length > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            // tasks only read geometry built beforehand
+            GeometryBuilder.build(scene.shapes);
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            for(int tile = 0; tile < images.length; tile++) {
+                task.renderTile(tile);
+            }
+        }
+        for(int tile = 0; tile < images.length; tile++) {
+            tiles.put(missing.get(tile), images[tile]);
+        }
+        rendered += images.length;
+        return skipped;
+    }
+
+    /**
+     * Returns column or row of tile containing device pixel
+     * @param pixel device coordinate at tile zoom level
+     * @return column or row
+     */
+    private static long tileOf(double pixel) {
+        return (long)Math.floor(pixel / TILE_SIZE);
+    }
+
+    /**
+     * Drops tiles showing anything that differs between version they show and specified one
+     * @param scene new version
+     */
+    private void update(Scene scene) {
+        Scene old = tiled;
+        tiled = scene;
+        if(old == null || old.shapes.length != scene.shapes.length || !old.background.equals(scene.background)
+                || old.scaleX != scene.scaleX || old.scaleY != scene.scaleY) {
+            clear();
+            return;
+        }
+        List<Rectangle2D> changed = new ArrayList<>();
+        for(int i = 0; i < scene.shapes.length; i++) {
+            boolean highlightChanged = (i == old.liveIndex && old.highlightLive) != (i == scene.liveIndex && scene.highlightLive);
+            if(scene.shapes[i] == old.shapes[i] && !highlightChanged) {
+                continue;
+            }
+            if(changed.size() >= MAX_CHANGED) {
+                clear();
+                return;
+            }
+            if(old.shapes[i].isDrawable()) {
+                changed.add(old.shapes[i].getBounds2D());
+            }
+            if(scene.shapes[i].isDrawable()) {
+                changed.add(scene.shapes[i].getBounds2D());
+            }
+        }
+        if(changed.isEmpty()) {
+            return;
+        }
+        Iterator<Key> keys = tiles.keySet().iterator();
+        while(keys.hasNext()) {
+            Key key = keys.next();
+            double zoom = Viewport.zoomOf(key.level);
+            // world area of tile widened by border and one device pixel
+            double minX = key.x * TILE_SIZE / (zoom * scene.scaleX);
+            double minY = key.y * TILE_SIZE / (zoom * scene.scaleY);
+            double maxX = (key.x + 1) * TILE_SIZE / (zoom * scene.scaleX);
+            double maxY = (key.y + 1) * TILE_SIZE / (zoom * scene.scaleY);
+            double marginX = ShapeRenderer.BORDER_MARGIN + PIXEL_MARGIN / (zoom * scene.scaleX);
+            double marginY = ShapeRenderer.BORDER_MARGIN + PIXEL_MARGIN / (zoom * scene.scaleY);
+            for(Rectangle2D bounds : changed) {
+                if(bounds.getMaxX() + marginX >= minX && bounds.getMinX() - marginX <= maxX
+                        && bounds.getMaxY() + marginY >= minY && bounds.getMinY() - marginY <= maxY) {
+                    keys.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all tiles
+     */
+    public void clear() {
+        tiles.clear();
+    }
+
+    /**
+     * Returns statistics of cache, used for diagnostics
+     * @return cached tiles, rendered and blitted tiles and evictions
+     */
+    public String getStatistics() {
+        return tiles.size() + " tiles (~" + tiles.size() * TILE_BYTES / 1024 + " KiB of " + BUDGET_BYTES / 1024 + " KiB budget), "
+                + rendered + " rendered, " + blitted + " blitted, " + evictions + " evictions";
+    }
+}
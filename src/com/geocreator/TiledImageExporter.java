@@ -0,0 +1,163 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Renders shapes into PNG image of any size using bounded memory.<br>
+ * Output is cut into horizontal bands of tiles. Tiles of one band are rendered in parallel on a {@link ForkJoinPool},
+ * each through its own {@link Graphics2D} translated to the tile origin and painting only shapes overlapping the tile.
+ * Finished band is streamed to {@link PngStreamWriter} while the next one is being rendered, so only two bands
+ * are held in memory regardless of image height.<br>
+ * Shapes are antialiased - without it thin outlines of curves are clipped differently on each side of tile edge
+ * and visibly jog there.<br>
+ * Geometry of shapes is read concurrently - it is built by the constructor on the calling thread and shapes must not
+ * be modified until export finishes, so it is meant to be used with shape snapshots (see {@link PolyShape#snapshot()}).
+ * @see PngStreamWriter
+ * @see ShapeRenderer
+ */
+public class TiledImageExporter {
+    public static final int TILE_SIZE = 512;     // width and height of single tile in pixels
+
+    private List<PolyShape> shapes = new ArrayList<>();         // drawable shapes in painting order
+    private List<Rectangle2D> bounds = new ArrayList<>();       // bounds of shapes including border, in output pixels
+    private Color background;
+    private double scale;
+    private int width;
+    private int height;
+    private BufferedImage[] bands = new BufferedImage[2];     // band being encoded and band being rendered
+
+    /**
+     * Prepares export of shapes drawn on canvas of given size
+     * @param polyShapes shapes in painting order
+     * @param canvasWidth canvas width
+     * @param canvasHeight canvas height
+     * @param scale scale factor, output image has canvas size multiplied by it
+     * @param background background color
+     */
+    public TiledImageExporter(Iterable<PolyShape> polyShapes, int canvasWidth, int canvasHeight, double scale, Color background) {
+        this.scale = scale;
+        this.background = background;
+        this.width = (int)Math.ceil(canvasWidth * scale);
+        this.height = (int)Math.ceil(canvasHeight * scale);
+        for(PolyShape pls : polyShapes) {
+            if(pls.isDrawable()) {
+                Rectangle2D b = pls.getBounds2D();
+                shapes.add(pls);
+                // border is one canvas pixel wide, half of it sticks out of the shape
+                bounds.add(new Rectangle2D.Double((b.getX() - 1) * scale, (b.getY() - 1) * scale,
+                        (b.getWidth() + 2) * scale, (b.getHeight() + 2) * scale));
+            }
+        }
+        // bounds of moved shape are kept but its shape is not, tile threads must not build it at the same time
+        GeometryBuilder.build(shapes);
+    }
+
+    /**
+     * Returns output image width
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns output image height
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Renders one band of tiles
+     * @param band band number
+     * @return rendered band image
+     */
+    private BufferedImage renderBand(int band) {
+        BufferedImage image = bands[band & 1];
+        if(image == null) {
+            image = bands[band & 1] = new BufferedImage(width, Math.min(TILE_SIZE, height), BufferedImage.TYPE_INT_RGB);
+        }
+        int y = band * TILE_SIZE;
+        int bandHeight = Math.min(TILE_SIZE, height - y);
+
+        List<Integer> bandShapes = new ArrayList<>();
+        for(int i = 0; i < shapes.size(); i++) {
+            Rectangle2D b = bounds.get(i);
+            if(b.getMaxY() >= y && b.getMinY() <= y + bandHeight) {
+                bandShapes.add(i);
+            }
+        }
+
+        List<ForkJoinTask<?>> tiles = new ArrayList<>();
+        for(int x = 0; x < width; x += TILE_SIZE) {
+            int tileX = x;
+            int tileWidth = Math.min(TILE_SIZE, width - x);
+            BufferedImage target = image;
+            tiles.add(ForkJoinTask.adapt(() -> renderTile(target.getSubimage(tileX, 0, tileWidth, bandHeight), tileX, y, bandShapes)));
+        }
+        ForkJoinTask.invokeAll(tiles);
+        return image;
+    }
+
+    /**
+     * Renders single tile
+     * @param tile part of band image covered by tile
+     * @param x tile position in output image
+     * @param y tile position in output image
+     * @param bandShapes indices of shapes overlapping tile's band
+     */
+    private void renderTile(BufferedImage tile, int x, int y, List<Integer> bandShapes) {
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setColor(background);
+        g2d.fillRect(0, 0, tile.getWidth(), tile.getHeight());
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.translate(-x, -y);
+        g2d.scale(scale, scale);
+        for(int i : bandShapes) {
+            Rectangle2D b = bounds.get(i);
+            if(b.getMaxX() >= x && b.getMinX() <= x + tile.getWidth()) {
+                ShapeRenderer.paintShape(g2d, shapes.get(i), false);
+            }
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Renders whole image and writes it as PNG
+     * @param out stream to write to, it is closed afterwards
+     * @param progress receives number of bands written
+     * @throws IOException
+     */
+    public void export(OutputStream out, ProgressListener progress) throws IOException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int bandCount = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        try(PngStreamWriter png = new PngStreamWriter(out, width, height)) {
+            ForkJoinTask<BufferedImage> next = pool.submit(() -> renderBand(0));
+            for(int band = 0; band < bandCount; band++) {
+                BufferedImage image = next.join();
+                if(band + 1 < bandCount) {
+                    int nextBand = band + 1;
+                    next = pool.submit(() -> renderBand(nextBand));
+                }
+                int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+                png.writeRows(pixels, 0, width, Math.min(TILE_SIZE, height - band * TILE_SIZE));
+                progress.progress(band + 1, bandCount);
+            }
+        }
+
+        System.out.printf("[TiledImageExporter] Exported %dx%d image (%d shapes, %d bands) in %.1f ms%n",
+                width, height, shapes.size(), bandCount, (System.nanoTime() - start) / 1e6);
+    }
+}
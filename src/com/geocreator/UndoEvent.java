@@ -0,0 +1,22 @@
+package com.geocreator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Event fired to undo last change of shapes on canvas. Logs that action in terminal.
+ * @see GeometricCanvas
+ * @see UndoHistory
+ */
+public class UndoEvent implements ActionListener {
+    private MainWindow outerWindow;
+
+    public UndoEvent(MainWindow mw) {
+        this.outerWindow = mw;
+    }
+
+    public void actionPerformed(ActionEvent actionEvent) {
+        System.out.println("[Event] " + this.getClass().getSimpleName());
+        outerWindow.cvs.undo();
+    }
+}
@@ -0,0 +1,328 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+
+/**
+ * Undo and redo history of changes done to shapes on {@link GeometricCanvas}.<br>
+ * History does not copy the scene - every change is kept as a small record of how to revert and repeat it,
+ * so move, scale, rotate, recolor and z-order change each cost constant memory. Deleted shape is kept by its record
+ * until the record is dropped. Changes of the same kind done to the same shape in quick succession (wheel notches,
+ * color chooser drags) are merged into one record, and so are all moves of one drag gesture.<br>
+ * Records are dropped starting from the oldest once history takes more than {@code geocreator.undoBudgetKB}
+ * (8192 by default) kilobytes. History is only used on Event Dispatch Thread.
+ * @see GeometricCanvas
+ */
+public class UndoHistory {
+    public static final long BUDGET_BYTES = Long.getLong("geocreator.undoBudgetKB", 8192) * 1024;
+
+    // changes closer to each other than this are merged
+    private static final long COALESCE_NANOS = 750000000L;
+    // approximate heap taken by record itself
+    private static final long RECORD_SIZE = 64;
+
+    /**
+     * Single change that can be reverted and repeated
+     */
+    abstract static class Edit {
+        final PolyShape pls;    // changed shape
+        long time = System.nanoTime();
+
+        Edit(PolyShape pls) {
+            this.pls = pls;
+        }
+
+        /**
+         * Reverts change
+         * @param canvas canvas shape is on
+         */
+        abstract void undo(GeometricCanvas canvas);
+
+        /**
+         * Repeats reverted change
+         * @param canvas canvas shape is on
+         */
+        abstract void redo(GeometricCanvas canvas);
+
+        /**
+         * Merges change that directly follows this one into this record
+         * @param next following change of the same kind and shape
+         * @return true if merged
+         */
+        boolean absorb(Edit next) {
+            return false;
+        }
+
+        /**
+         * Returns approximate heap taken by record
+         * @return size in bytes
+         */
+        long size() {
+            return RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Shape was moved, distance is as passed to {@link PolyShape#move(double, double)}
+     */
+    static class Move extends Edit {
+        private double x;
+        private double y;
+
+        Move(PolyShape pls, double x, double y) {
+            super(pls);
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.applyMove(pls, -x, -y);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyMove(pls, x, y);
+        }
+
+        @Override
+        boolean absorb(Edit next) {
+            x += ((Move)next).x;
+            y += ((Move)next).y;
+            return true;
+        }
+    }
+
+    /**
+     * Scale factor of shape was changed
+     */
+    static class Scale extends Edit {
+        private double before;
+        private double after;
+
+        Scale(PolyShape pls, double before, double after) {
+            super(pls);
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.applyScale(pls, before);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyScale(pls, after);
+        }
+
+        @Override
+        boolean absorb(Edit next) {
+            after = ((Scale)next).after;
+            return true;
+        }
+    }
+
+    /**
+     * Rotation of shape was changed
+     */
+    static class Rotate extends Edit {
+        private int before;
+        private int after;
+
+        Rotate(PolyShape pls, int before, int after) {
+            super(pls);
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.applyRotate(pls, before);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyRotate(pls, after);
+        }
+
+        @Override
+        boolean absorb(Edit next) {
+            after = ((Rotate)next).after;
+            return true;
+        }
+    }
+
+    /**
+     * Background color of shape was changed
+     */
+    static class Recolor extends Edit {
+        private Color before;
+        private Color after;
+
+        Recolor(PolyShape pls, Color before, Color after) {
+            super(pls);
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.applyColor(pls, before);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyColor(pls, after);
+        }
+
+        @Override
+        boolean absorb(Edit next) {
+            after = ((Recolor)next).after;
+            return true;
+        }
+    }
+
+    /**
+     * Shape was moved to front or bottom layer
+     */
+    static class Reorder extends Edit {
+        private boolean toFront;
+        private PolyShape predecessor;  // shape painted right under it before, null if it was at the bottom
+        private long zOrder;            // z-order before
+
+        Reorder(PolyShape pls, boolean toFront, PolyShape predecessor, long zOrder) {
+            super(pls);
+            this.toFront = toFront;
+            this.predecessor = predecessor;
+            this.zOrder = zOrder;
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.restorePolyShape(pls, predecessor, zOrder);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyReorder(pls, toFront);
+        }
+    }
+
+    /**
+     * Shape was deleted
+     */
+    static class Delete extends Edit {
+        private PolyShape predecessor;  // shape painted right under it, null if it was at the bottom
+        private long zOrder;
+        private long size;              // record keeps deleted shape alive
+
+        Delete(PolyShape pls, PolyShape predecessor, long zOrder) {
+            super(pls);
+            this.predecessor = predecessor;
+            this.zOrder = zOrder;
+            this.size = RECORD_SIZE + pls.estimateHeapFootprint();
+        }
+
+        @Override
+        void undo(GeometricCanvas canvas) {
+            canvas.restorePolyShape(pls, predecessor, zOrder);
+        }
+
+        @Override
+        void redo(GeometricCanvas canvas) {
+            canvas.applyRemove(pls);
+        }
+
+        @Override
+        long size() {
+            return size;
+        }
+    }
+
+    private ArrayDeque<Edit> undoable = new ArrayDeque<>();     // oldest first
+    private ArrayDeque<Edit> redoable = new ArrayDeque<>();     // most recently undone last
+    private long bytes = 0;             // size of all records
+    private boolean sealed = true;      // next change must not be merged into last one
+
+    /**
+     * Records change that was just done. Changes that were undone can't be redone after.
+     * @param edit change
+     */
+    void record(Edit edit) {
+        for(Edit dropped : redoable) {
+            bytes -= dropped.size();
+        }
+        redoable.clear();
+
+        Edit last = undoable.peekLast();
+        if(!sealed && last != null && last.pls == edit.pls && last.getClass() == edit.getClass()
+                && edit.time - last.time < COALESCE_NANOS && last.absorb(edit)) {
+            last.time = edit.time;
+            return;
+        }
+        undoable.addLast(edit);
+        bytes += edit.size();
+        sealed = false;
+        while(bytes > BUDGET_BYTES && undoable.size() > 1) {
+            bytes -= undoable.pollFirst().size();
+        }
+    }
+
+    /**
+     * Ends current gesture, next change starts new record
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    /**
+     * Reverts last change
+     * @param canvas canvas changes were done on
+     * @return false if there was nothing to undo
+     */
+    public boolean undo(GeometricCanvas canvas) {
+        Edit edit = undoable.pollLast();
+        if(edit == null) {
+            return false;
+        }
+        edit.undo(canvas);
+        redoable.addLast(edit);
+        sealed = true;
+        return true;
+    }
+
+    /**
+     * Repeats last undone change
+     * @param canvas canvas changes were done on
+     * @return false if there was nothing to redo
+     */
+    public boolean redo(GeometricCanvas canvas) {
+        Edit edit = redoable.pollLast();
+        if(edit == null) {
+            return false;
+        }
+        edit.redo(canvas);
+        undoable.addLast(edit);
+        sealed = true;
+        return true;
+    }
+
+    /**
+     * Returns approximate heap taken by history
+     * @return size in bytes
+     */
+    public long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Drops whole history
+     */
+    public void clear() {
+        undoable.clear();
+        redoable.clear();
+        bytes = 0;
+        sealed = true;
+    }
+}
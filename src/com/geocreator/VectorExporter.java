@@ -0,0 +1,349 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.PathIterator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams shapes to vector image formats (SVG or PDF) without building any document tree in memory.<br>
+ * Shapes are written in painting order, each as its transformed outline taken from {@link PolyShape#getShape()}
+ * filled with its background color and stroked with one pixel wide black border, the same way canvas paints them.
+ * Text is encoded straight into a small byte buffer, so memory use does not depend on number of shapes.<br>
+ * Usage: create exporter, {@link #writeShape(PolyShape)} every shape, then {@link #close()}.
+ * @see ShapeRenderer
+ */
+public class VectorExporter implements Closeable {
+    /**
+     * Supported output formats
+     */
+    public enum Format {
+        SVG("svg"),
+        PDF("pdf");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Returns usual file name extension of format
+         * @return extension without dot
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int COORD_PRECISION = 100;     // coordinates are written with two decimal places
+    private static final int COLOR_PRECISION = 1000;    // PDF color components with three decimal places
+
+    private OutputStream out;
+    private Format format;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private long flushed = 0;           // bytes already written to stream
+    private long[] objectOffsets = new long[6];     // PDF objects 1-5 byte offsets
+    private long contentStart;          // PDF offset of content stream data
+    private double[] coords = new double[6];
+    private long shapeCount = 0;
+
+    /**
+     * Writes document header and background
+     * @param out stream to write to, closed together with exporter
+     * @param format output format
+     * @param width image width
+     * @param height image height
+     * @param background background color
+     * @throws IOException
+     */
+    public VectorExporter(OutputStream out, Format format, int width, int height, Color background) throws IOException {
+        this.out = out;
+        this.format = format;
+        if(format == Format.SVG) {
+            put("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+            number(width, 1);
+            put("\" height=\"");
+            number(height, 1);
+            put("\" viewBox=\"0 0 ");
+            number(width, 1);
+            put(' ');
+            number(height, 1);
+            put("\">\n<rect width=\"100%\" height=\"100%\" fill=\"");
+            hexColor(background);
+            put("\"/>\n<g stroke=\"#000\" stroke-width=\"1\">\n");
+        } else {
+            put("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");     // binary marker, tells tools the file is not plain text
+            startObject(1);
+            put("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+            startObject(2);
+            put("<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+            startObject(3);
+            put("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ");
+            number(width, 1);
+            put(' ');
+            number(height, 1);
+            put("] /Contents 4 0 R >>\nendobj\n");
+            startObject(4);
+            put("<< /Length 5 0 R >>\nstream\n");
+            contentStart = offset();
+            // canvas y axis points down, PDF one up
+            put("1 0 0 -1 0 ");
+            number(height, 1);
+            put(" cm\n1 w 0 G\n");
+            pdfColor(background);
+            put("0 0 ");
+            number(width, 1);
+            put(' ');
+            number(height, 1);
+            put(" re f\n");
+        }
+    }
+
+    /**
+     * Returns offset in output of next written byte
+     * @return byte offset
+     */
+    private long offset() {
+        return flushed + position;
+    }
+
+    /**
+     * Remembers offset of PDF object and writes its header
+     * @param number object number
+     */
+    private void startObject(int number) throws IOException {
+        objectOffsets[number] = offset();
+        number(number, 1);
+        put(" 0 obj\n");
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        flushed += position;
+        position = 0;
+    }
+
+    private void put(char c) throws IOException {
+        if(position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte)c;
+    }
+
+    private void put(String s) throws IOException {
+        for(int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    /**
+     * Writes decimal number rounded to specified precision, without trailing zeros
+     * @param value number
+     * @param precision 1, 100 or 1000 for zero, two or three decimal places
+     */
+    private void number(double value, int precision) throws IOException {
+        long fixed = Math.round(value * precision);
+        if(fixed < 0) {
+            put('-');
+            fixed = -fixed;
+        }
+        long whole = fixed / precision;
+        int fraction = (int)(fixed % precision);
+
+        if(position + 20 > buffer.length) {
+            flushBuffer();
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte)('0' + whole % 10);
+            whole /= 10;
+        } while(whole > 0);
+        for(int i = start, j = position - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+
+        if(fraction != 0) {
+            put('.');
+            for(int digit = precision / 10; fraction != 0; digit /= 10) {
+                put((char)('0' + fraction / digit));
+                fraction %= digit;
+            }
+        }
+    }
+
+    private void hexColor(Color color) throws IOException {
+        String digits = "0123456789abcdef";
+        put('#');
+        for(int shift = 20; shift >= 0; shift -= 4) {
+            put(digits.charAt((color.getRGB() >> shift) & 0xf));
+        }
+    }
+
+    private void pdfColor(Color color) throws IOException {
+        number(color.getRed() / 255.0, COLOR_PRECISION);
+        put(' ');
+        number(color.getGreen() / 255.0, COLOR_PRECISION);
+        put(' ');
+        number(color.getBlue() / 255.0, COLOR_PRECISION);
+        put(" rg\n");
+    }
+
+    private void point(double x, double y) throws IOException {
+        number(x, COORD_PRECISION);
+        put(' ');
+        number(y, COORD_PRECISION);
+    }
+
+    /**
+     * Writes single shape, shapes that are not drawable are skipped
+     * @param pls shape to write
+     * @throws IOException
+     */
+    public void writeShape(PolyShape pls) throws IOException {
+        if(!pls.isDrawable()) {
+            return;
+        }
+        PathIterator it = pls.getShape().getPathIterator(null);
+        Color color = pls.getBackGroundColor();
+        if(format == Format.SVG) {
+            put("<path fill=\"");
+            hexColor(color);
+            if(color.getAlpha() != 255) {
+                put("\" fill-opacity=\"");
+                number(color.getAlpha() / 255.0, COLOR_PRECISION);
+            }
+            if(it.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+                put("\" fill-rule=\"evenodd");
+            }
+            put("\" d=\"");
+            writeSvgPath(it);
+            put("\"/>\n");
+        } else {
+            pdfColor(color);
+            writePdfPath(it);
+            put(it.getWindingRule() == PathIterator.WIND_EVEN_ODD ? "B*\n" : "B\n");
+        }
+        shapeCount++;
+    }
+
+    private void writeSvgPath(PathIterator it) throws IOException {
+        for(; !it.isDone(); it.next()) {
+            switch(it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    put('M');
+                    point(coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    put('L');
+                    point(coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    put('Q');
+                    point(coords[0], coords[1]);
+                    put(' ');
+                    point(coords[2], coords[3]);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    put('C');
+                    point(coords[0], coords[1]);
+                    put(' ');
+                    point(coords[2], coords[3]);
+                    put(' ');
+                    point(coords[4], coords[5]);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    put('Z');
+                    break;
+            }
+        }
+    }
+
+    private void writePdfPath(PathIterator it) throws IOException {
+        double lastX = 0, lastY = 0;        // current point, needed to turn quadratic curves into cubic ones
+        double startX = 0, startY = 0;
+        for(; !it.isDone(); it.next()) {
+            switch(it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    point(coords[0], coords[1]);
+                    put(" m\n");
+                    lastX = startX = coords[0];
+                    lastY = startY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    point(coords[0], coords[1]);
+                    put(" l\n");
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    point(lastX + 2.0 / 3 * (coords[0] - lastX), lastY + 2.0 / 3 * (coords[1] - lastY));
+                    put(' ');
+                    point(coords[2] + 2.0 / 3 * (coords[0] - coords[2]), coords[3] + 2.0 / 3 * (coords[1] - coords[3]));
+                    put(' ');
+                    point(coords[2], coords[3]);
+                    put(" c\n");
+                    lastX = coords[2];
+                    lastY = coords[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    point(coords[0], coords[1]);
+                    put(' ');
+                    point(coords[2], coords[3]);
+                    put(' ');
+                    point(coords[4], coords[5]);
+                    put(" c\n");
+                    lastX = coords[4];
+                    lastY = coords[5];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    put("h\n");
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes document trailer (for PDF content stream length and cross-reference table) and closes stream
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if(format == Format.SVG) {
+                put("</g>\n</svg>\n");
+            } else {
+                long contentLength = offset() - contentStart;
+                put("endstream\nendobj\n");
+                startObject(5);
+                number(contentLength, 1);
+                put("\nendobj\n");
+
+                long xref = offset();
+                put("xref\n0 6\n0000000000 65535 f \n");
+                for(int i = 1; i <= 5; i++) {
+                    String digits = Long.toString(objectOffsets[i]);
+                    for(int pad = digits.length(); pad < 10; pad++) {
+                        put('0');
+                    }
+                    put(digits);
+                    put(" 00000 n \n");
+                }
+                put("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n");
+                number(xref, 1);
+                put("\n%%EOF\n");
+            }
+            flushBuffer();
+            System.out.println("[VectorExporter] Exported " + shapeCount + " shapes to " + format + ", " + offset() / 1024 + " KiB");
+        } finally {
+            out.close();
+        }
+    }
+}
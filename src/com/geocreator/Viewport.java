@@ -0,0 +1,153 @@
+package com.geocreator;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Part of the drawing shown by {@link GeometricCanvas} - zoom and pan of the view. Immutable, panning or zooming
+ * returns a new viewport, so it can be handed over to other threads together with {@link Scene}.<br>
+ * Point of the drawing (world point) is shown on canvas at {@code world * zoom - offset}.
+ * Zoom goes in discrete levels, {@value #LEVELS_PER_DOUBLING} levels double it, so rasters of each level
+ * can be cached by {@link TileCache}.
+ * @see GeometricCanvas
+ * @see TileCache
+ */
+public class Viewport {
+    public static final int LEVELS_PER_DOUBLING = 4;
+    public static final int MIN_LEVEL = -4 * LEVELS_PER_DOUBLING;    // 1/16 of drawing size
+    public static final int MAX_LEVEL = 4 * LEVELS_PER_DOUBLING;     // 16 times drawing size
+    public static final Viewport IDENTITY = new Viewport(0, 0, 0);
+
+    private final int level;            // zoom level, 0 shows drawing at its size
+    private final double offsetX;       // canvas position of world origin, negated
+    private final double offsetY;
+
+    private Viewport(int level, double offsetX, double offsetY) {
+        this.level = level;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * Returns zoom of specified level
+     * @param level zoom level
+     * @return scale factor from world to canvas
+     */
+    public static double zoomOf(int level) {
+        return Math.pow(2, (double)level / LEVELS_PER_DOUBLING);
+    }
+
+    /**
+     * Returns zoom level
+     * @return zoom level, 0 if drawing is shown at its size
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns zoom
+     * @return scale factor from world to canvas
+     */
+    public double getZoom() {
+        return zoomOf(level);
+    }
+
+    /**
+     * Returns offset of view along x axis
+     * @return canvas x of world origin, negated
+     */
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    /**
+     * Returns offset of view along y axis
+     * @return canvas y of world origin, negated
+     */
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    /**
+     * Returns view transform
+     * @return transform from world to canvas coordinates
+     */
+    public AffineTransform getTransform() {
+        double zoom = getZoom();
+        return new AffineTransform(zoom, 0, 0, zoom, -offsetX, -offsetY);
+    }
+
+    /**
+     * Maps point on canvas (eg. mouse position) to point of the drawing
+     * @param point canvas point
+     * @return world point
+     */
+    public Point2D.Double toWorld(Point2D point) {
+        double zoom = getZoom();
+        return new Point2D.Double((point.getX() + offsetX) / zoom, (point.getY() + offsetY) / zoom);
+    }
+
+    /**
+     * Maps area of the drawing to the smallest area of canvas pixels covering it
+     * @param area world area
+     * @return canvas area
+     */
+    public Rectangle toCanvas(Rectangle2D area) {
+        double zoom = getZoom();
+        int x = (int)Math.floor(area.getMinX() * zoom - offsetX);
+        int y = (int)Math.floor(area.getMinY() * zoom - offsetY);
+        return new Rectangle(x, y, (int)Math.ceil(area.getMaxX() * zoom - offsetX) - x + 1, (int)Math.ceil(area.getMaxY() * zoom - offsetY) - y + 1);
+    }
+
+    /**
+     * Returns view moved together with the drawing by specified distance
+     * @param dx canvas distance along x axis
+     * @param dy canvas distance along y axis
+     * @return panned viewport
+     */
+    public Viewport panned(double dx, double dy) {
+        return new Viewport(level, offsetX - dx, offsetY - dy);
+    }
+
+    /**
+     * Returns view zoomed in or out by specified number of levels, keeping the same world point at specified canvas point.
+     * Zoom level stays between {@link #MIN_LEVEL} and {@link #MAX_LEVEL}.
+     * @param point canvas point that stays in place, eg. mouse position
+     * @param levels number of levels to zoom in, negative to zoom out
+     * @return zoomed viewport
+     */
+    public Viewport zoomedAt(Point2D point, int levels) {
+        int zoomed = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level + levels));
+        if(zoomed == level) {
+            return this;
+        }
+        Point2D.Double world = toWorld(point);
+        double zoom = zoomOf(zoomed);
+        return new Viewport(zoomed, world.getX() * zoom - point.getX(), world.getY() * zoom - point.getY());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Viewport other = (Viewport) o;
+        return level == other.level && offsetX == other.offsetX && offsetY == other.offsetY;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = level;
+        result = 31 * result + Double.hashCode(offsetX);
+        result = 31 * result + Double.hashCode(offsetY);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Math.round(getZoom() * 100) + "%";
+    }
+}
@@ -0,0 +1,544 @@
+package com.geocreator;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Painting order of {@link PolyShape} objects on {@link GeometricCanvas}, bottom first.<br>
+ * Every shape gets z-order label that grows in painting order (see {@link PolyShape#getZOrder()}), with gaps left
+ * between neighbours, so shape can be put anywhere by picking label between its neighbours. When there is no gap left,
+ * only a block of nearby labels that is sparse enough is relabelled. Labels of shapes moved to bottom are negative,
+ * labels of all other shapes are at least {@link #setFloor(long) floor}, which leaves room for document opened out-of-core
+ * (see {@link PagedDocument}) to be painted between them.<br>
+ * Shapes are kept in a treap ordered by label and threaded in painting order, with a map from shape ID to its node,
+ * so adding, removing, moving to front or bottom and positional access take O(log n) and iteration takes O(1) per shape.
+ * Shapes are told apart by ID, like {@link PolyShape#equals(Object)} does.
+ * @see GeometricCanvas
+ * @see ShapeIndex
+ */
+public class ZOrderList extends AbstractList<PolyShape> {
+    // distance between labels of shapes added at front or bottom
+    static final long GAP = 1L << 20;
+    // each group has 2^GROUP_BITS labels
+    static final int GROUP_BITS = 62;
+    static final long GROUP_SIZE = 1L << GROUP_BITS;
+    // lower density threshold leaves blocks sparser, between 1 and 2
+    static final double DENSITY = 1.4;
+
+    /**
+     * Shape's place in painting order
+     */
+    private static class Node {
+        final PolyShape pls;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        long label;
+        int size = 1;       // number of nodes in subtree
+        Node left;          // subtree with lower labels
+        Node right;         // subtree with higher labels
+        Node previous;      // shape painted right under this one
+        Node next;          // shape painted right over this one
+
+        Node(PolyShape pls) {
+            this.pls = pls;
+        }
+    }
+
+    private HashMap<Long, Node> nodes = new HashMap<>();    // shape ID -> node
+    private Node root;
+    private Node head;      // bottom shape
+    private Node tail;      // top shape
+    private long floor = 0; // lowest label of shapes that are not at bottom
+
+    // results of split
+    private Node splitLower;
+    private Node splitUpper;
+
+    /**
+     * Sets lowest label of shapes that are not moved to bottom. Shapes that have lower one are relabelled.
+     * @param floor lowest label, not negative
+     */
+    public void setFloor(long floor) {
+        this.floor = Math.max(this.floor, floor);
+        Node first = head;
+        while(first != null && first.label < 0) {
+            first = first.next;
+        }
+        if(first != null && first.label < this.floor) {
+            long shift = this.floor - first.label;
+            for(Node node = first; node != null; node = node.next) {
+                setLabel(node, node.label + shift);     // order does not change, treap stays valid
+            }
+        }
+    }
+
+    /**
+     * Puts shape on top of all others
+     * @param pls shape not in list yet
+     */
+    public void addLast(PolyShape pls) {
+        Node node = link(pls, tail, null);
+        if(node.previous == null || node.previous.label < 0) {
+            setLabel(node, floor);
+        } else {
+            place(node, false);
+        }
+        insert(node);
+    }
+
+    /**
+     * Puts shape under all others
+     * @param pls shape not in list yet
+     */
+    public void addFirst(PolyShape pls) {
+        Node node = link(pls, null, head);
+        place(node, true);
+        insert(node);
+    }
+
+    /**
+     * Puts shape right over specified one
+     * @param predecessor shape to be painted under it, null or shape not in list to put it at the bottom
+     * @param pls shape not in list yet
+     * @param bottom if shape goes between shapes moved to bottom and the others (with out-of-core document between them),
+     *               true puts it under the document, false over it
+     */
+    public void addAfter(PolyShape predecessor, PolyShape pls, boolean bottom) {
+        Node previous = predecessor != null ? nodes.get(predecessor.getID()) : null;
+        Node node = link(pls, previous, previous != null ? previous.next : head);
+        place(node, bottom);
+        insert(node);
+    }
+
+    /**
+     * Puts shape at specified position, see {@link #addAfter(PolyShape, PolyShape, boolean)}
+     * @param index position, 0 is bottom
+     * @param pls shape not in list yet
+     */
+    @Override
+    public void add(int index, PolyShape pls) {
+        if(index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        if(index == 0) {
+            addFirst(pls);
+        } else if(index == size()) {
+            addLast(pls);
+        } else {
+            addAfter(select(index - 1).pls, pls, false);
+        }
+    }
+
+    /**
+     * Puts shape on top of all others, see {@link #addLast(PolyShape)}
+     * @param pls shape not in list yet
+     * @return true
+     */
+    @Override
+    public boolean add(PolyShape pls) {
+        addLast(pls);
+        return true;
+    }
+
+    /**
+     * Takes shape out of painting order
+     * @param o shape
+     * @return true if it was in list
+     */
+    @Override
+    public boolean remove(Object o) {
+        if(!(o instanceof PolyShape)) {
+            return false;
+        }
+        Node node = nodes.get(((PolyShape)o).getID());
+        if(node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    @Override
+    public PolyShape remove(int index) {
+        Node node = select(index);
+        unlink(node);
+        return node.pls;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof PolyShape && nodes.containsKey(((PolyShape)o).getID());
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if(!(o instanceof PolyShape)) {
+            return -1;
+        }
+        Node node = nodes.get(((PolyShape)o).getID());
+        if(node == null) {
+            return -1;
+        }
+        int index = 0;
+        Node subtree = root;
+        while(subtree != node) {
+            if(node.label < subtree.label) {
+                subtree = subtree.left;
+            } else {
+                index += size(subtree.left) + 1;
+                subtree = subtree.right;
+            }
+        }
+        return index + size(node.left);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * Returns shape painted right under specified one
+     * @param pls shape in list
+     * @return preceding shape or null if shape is at the bottom or not in list
+     */
+    public PolyShape getPrevious(PolyShape pls) {
+        Node node = nodes.get(pls.getID());
+        return node != null && node.previous != null ? node.previous.pls : null;
+    }
+
+    /**
+     * Returns shape painted on top of all others
+     * @return top shape or null if list is empty
+     */
+    public PolyShape getLast() {
+        return tail != null ? tail.pls : null;
+    }
+
+    @Override
+    public PolyShape get(int index) {
+        return select(index).pls;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        root = head = tail = null;
+        modCount++;
+    }
+
+    /**
+     * Iterates shapes in painting order, bottom first
+     * @return iterator supporting removal
+     */
+    @Override
+    public Iterator<PolyShape> iterator() {
+        return new Iterator<PolyShape>() {
+            private Node next = head;
+            private Node last;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public PolyShape next() {
+                if(modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if(next == null) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = next.next;
+                return last.pls;
+            }
+
+            @Override
+            public void remove() {
+                if(last == null) {
+                    throw new IllegalStateException();
+                }
+                if(modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                unlink(last);
+                last = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * Creates node for shape and threads it between specified nodes
+     * @param pls shape not in list yet
+     * @param previous node to be right under it or null
+     * @param next node to be right over it or null
+     * @return new node, not in treap yet
+     */
+    private Node link(PolyShape pls, Node previous, Node next) {
+        if(nodes.containsKey(pls.getID())) {
+            throw new IllegalArgumentException("Shape with ID " + pls.getID() + " is already in painting order");
+        }
+        Node node = new Node(pls);
+        nodes.put(pls.getID(), node);
+        node.previous = previous;
+        node.next = next;
+        if(previous != null) {
+            previous.next = node;
+        } else {
+            head = node;
+        }
+        if(next != null) {
+            next.previous = node;
+        } else {
+            tail = node;
+        }
+        modCount++;
+        return node;
+    }
+
+    /**
+     * Removes node from map, thread and treap
+     * @param node node in list
+     */
+    private void unlink(Node node) {
+        root = delete(root, node);
+        nodes.remove(node.pls.getID());
+        if(node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if(node.next != null) {
+            node.next.previous = node.previous;
+        } else {
+            tail = node.previous;
+        }
+        node.previous = node.next = null;
+        modCount++;
+    }
+
+    /**
+     * Sets label of node and z-order of its shape
+     * @param node node
+     * @param label label
+     */
+    private static void setLabel(Node node, long label) {
+        node.label = label;
+        node.pls.setZOrder(label);
+    }
+
+    /**
+     * Returns lowest label of group
+     * @param bottom true for group of shapes moved to bottom
+     * @return lowest label
+     */
+    private long groupStart(boolean bottom) {
+        return bottom ? -GROUP_SIZE : floor;
+    }
+
+    /**
+     * Picks label for threaded node between labels of its neighbours, relabelling nearby nodes if there is no gap
+     * @param node node threaded into place, not in treap yet
+     * @param bottom which group node goes to if its neighbours are in different ones
+     */
+    private void place(Node node, boolean bottom) {
+        if(node.previous != null && node.previous.label >= 0) {
+            bottom = false;
+        } else if(node.next != null && node.next.label < 0) {
+            bottom = true;
+        }
+        long lower = inGroup(node.previous, bottom) ? node.previous.label : groupStart(bottom) - 1;    // exclusive
+        long upper = inGroup(node.next, bottom) ? node.next.label : groupStart(bottom) + GROUP_SIZE;  // exclusive
+        if(upper - lower < 2) {
+            relabel(node, bottom);
+        } else if(bottom && !inGroup(node.previous, true)) {
+            setLabel(node, Math.max(upper - GAP, lower + (upper - lower) / 2));
+        } else if(!bottom && !inGroup(node.next, false)) {
+            setLabel(node, Math.min(lower + GAP, lower + (upper - lower) / 2));
+        } else {
+            setLabel(node, lower + (upper - lower) / 2);
+        }
+    }
+
+    /**
+     * Makes room for node by spreading labels evenly over the smallest aligned block of labels around it that is sparse
+     * enough. Block of 2^i labels may hold at most (2 / {@link #DENSITY})^i nodes, so bigger blocks are left sparser
+     * and relabelling takes O(log n) amortized.
+     * @param node node threaded into place, not in treap yet
+     * @param bottom whether node is in group of shapes moved to bottom
+     */
+    private void relabel(Node node, boolean bottom) {
+        Node anchor = inGroup(node.previous, bottom) ? node.previous : node.next;
+        long start = groupStart(bottom);
+        for(int level = 1; level <= GROUP_BITS; level++) {
+            long blockStart = start + ((anchor.label - start) >> level << level);
+            long blockEnd = blockStart + (1L << level);
+            int count = countBelow(blockEnd) - countBelow(blockStart) + 1;
+            if(count > Math.pow(2 / DENSITY, level)) {
+                continue;
+            }
+            Node first = anchor;
+            while(first.previous != null && (first.previous == node || first.previous.label >= blockStart)) {
+                first = first.previous;
+            }
+            long step = (1L << level) / count;
+            long label = blockStart + step / 2;
+            for(Node relabelled = first; relabelled != null && (relabelled == node || relabelled.label < blockEnd); relabelled = relabelled.next) {
+                setLabel(relabelled, label);   // order does not change, treap stays valid
+                label += step;
+            }
+            return;
+        }
+        throw new IllegalStateException("Too many shapes in painting order");
+    }
+
+    /**
+     * Counts nodes with lower label
+     * @param label label
+     * @return number of nodes in treap with lower label
+     */
+    private int countBelow(long label) {
+        int count = 0;
+        Node subtree = root;
+        while(subtree != null) {
+            if(subtree.label < label) {
+                count += size(subtree.left) + 1;
+                subtree = subtree.right;
+            } else {
+                subtree = subtree.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether node is in specified group
+     * @param node node or null
+     * @param bottom true for group of shapes moved to bottom
+     * @return false if node is null or in the other group
+     */
+    private static boolean inGroup(Node node, boolean bottom) {
+        return node != null && (node.label < 0) == bottom;
+    }
+
+    private static int size(Node subtree) {
+        return subtree != null ? subtree.size : 0;
+    }
+
+    private static void update(Node subtree) {
+        subtree.size = 1 + size(subtree.left) + size(subtree.right);
+    }
+
+    /**
+     * Finds node at position
+     * @param index position, 0 is bottom
+     * @return node
+     */
+    private Node select(int index) {
+        if(index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        Node subtree = root;
+        while(true) {
+            int leftSize = size(subtree.left);
+            if(index < leftSize) {
+                subtree = subtree.left;
+            } else if(index == leftSize) {
+                return subtree;
+            } else {
+                index -= leftSize + 1;
+                subtree = subtree.right;
+            }
+        }
+    }
+
+    private void insert(Node node) {
+        root = insert(root, node);
+    }
+
+    private Node insert(Node subtree, Node node) {
+        if(subtree == null) {
+            return node;
+        }
+        if(node.priority > subtree.priority) {
+            split(subtree, node.label);
+            node.left = splitLower;
+            node.right = splitUpper;
+            update(node);
+            return node;
+        }
+        if(node.label < subtree.label) {
+            subtree.left = insert(subtree.left, node);
+        } else {
+            subtree.right = insert(subtree.right, node);
+        }
+        update(subtree);
+        return subtree;
+    }
+
+    private Node delete(Node subtree, Node node) {
+        if(subtree == node) {
+            Node merged = merge(node.left, node.right);
+            node.left = node.right = null;
+            node.size = 1;
+            return merged;
+        }
+        if(node.label < subtree.label) {
+            subtree.left = delete(subtree.left, node);
+        } else {
+            subtree.right = delete(subtree.right, node);
+        }
+        update(subtree);
+        return subtree;
+    }
+
+    /**
+     * Splits subtree into {@link #splitLower} with labels lower than specified one and {@link #splitUpper} with the rest
+     * @param subtree subtree
+     * @param label label to split at
+     */
+    private void split(Node subtree, long label) {
+        if(subtree == null) {
+            splitLower = splitUpper = null;
+        } else if(subtree.label < label) {
+            split(subtree.right, label);
+            subtree.right = splitLower;
+            update(subtree);
+            splitLower = subtree;
+        } else {
+            split(subtree.left, label);
+            subtree.left = splitUpper;
+            update(subtree);
+            splitUpper = subtree;
+        }
+    }
+
+    private static Node merge(Node lower, Node upper) {
+        if(lower == null) {
+            return upper;
+        }
+        if(upper == null) {
+            return lower;
+        }
+        if(lower.priority > upper.priority) {
+            lower.right = merge(lower.right, upper);
+            update(lower);
+            return lower;
+        }
+        upper.left = merge(lower, upper.left);
+        update(upper);
+        return upper;
+    }
+}
@@ -0,0 +1,28 @@
+package com.geocreator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Event fired to zoom the view of canvas in or out, or back to drawing size. Logs that action in terminal.
+ * @see GeometricCanvas
+ * @see Viewport
+ */
+public class ZoomEvent implements ActionListener {
+    private MainWindow outerWindow;
+    private int levels;     // zoom levels to zoom in, negative zoom out, 0 resets view
+
+    public ZoomEvent(MainWindow mw, int levels) {
+        this.outerWindow = mw;
+        this.levels = levels;
+    }
+
+    public void actionPerformed(ActionEvent actionEvent) {
+        if(levels == 0) {
+            outerWindow.cvs.resetView();
+        } else {
+            outerWindow.cvs.zoom(levels);
+        }
+        System.out.println("[Event] " + this.getClass().getSimpleName() + " to " + outerWindow.cvs.getViewport());
+    }
+}
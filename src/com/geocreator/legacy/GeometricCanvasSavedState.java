@@ -0,0 +1,15 @@
+package com.geocreator.legacy;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+
+/**
+ * Field layout of {@link com.geocreator.GeometricCanvasSavedState} as it was written with Java serialization by the first release.
+ * Only used to read such files, class name and serial version have to stay as they are.
+ * @see com.geocreator.LegacyDocumentImporter
+ */
+public class GeometricCanvasSavedState implements Serializable {
+    private static final long serialVersionUID = -7377550906292536893L;
+    public LinkedList<PolyShape> polyShapes;
+    public long nextFreePolyShapeID;
+}
@@ -0,0 +1,48 @@
+package com.geocreator.legacy;
+
+import com.geocreator.MainWindow;
+
+import java.awt.*;
+import java.io.Serializable;
+import java.util.Vector;
+
+/**
+ * Field layout of {@link com.geocreator.PolyShape} as it was written with Java serialization by the first release.
+ * Only used to read such files, class name and serial version have to stay as they are.
+ * @see com.geocreator.LegacyDocumentImporter
+ */
+public class PolyShape implements Serializable {
+    private static final long serialVersionUID = 5456201911720243300L;
+    private Vector<Point> coordinates;
+    private Shape shape;
+    private Color backgroundColor;
+    private MainWindow.Mode mode;
+    private long ID;
+    private double scaleTransformFactor;
+    private int rotateTransformIndex;
+    private boolean active;
+
+    public Vector<Point> getCoordinates() {
+        return coordinates;
+    }
+
+    public Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public MainWindow.Mode getMode() {
+        return mode;
+    }
+
+    public long getID() {
+        return ID;
+    }
+
+    public double getScaleTransformFactor() {
+        return scaleTransformFactor;
+    }
+
+    public int getRotateTransformIndex() {
+        return rotateTransformIndex;
+    }
+}